@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Temporary cache directories for the benchmarks.
+ */
+final class CacheDirs {
+    private CacheDirs() {}
+
+    static File create() throws IOException {
+        File dir = File.createTempFile("corgi-benchmark", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes {@code file} and, if it is a directory, everything in it.
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.CacheKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building cache keys with {@link CacheKey#with} and {@link CacheKey#hashed}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+    // Non-final so the JIT can't fold the keys into constants.
+    private String mType = "user";
+    private long mId = 12345678L;
+    private String mPath = "https://api.example.com/v2/users/12345678/timeline?since=1380000000&limit=50";
+    private int mPage = 3;
+
+    @Benchmark
+    public String withShort() {
+        return CacheKey.with(mType, mId);
+    }
+
+    @Benchmark
+    public String withLong() {
+        return CacheKey.with(mType, mPath, mPage);
+    }
+
+    @Benchmark
+    public String hashedShort() {
+        return CacheKey.hashed(mType, mId);
+    }
+
+    @Benchmark
+    public String hashedLong() {
+        return CacheKey.hashed(mType, mPath, mPage);
+    }
+}
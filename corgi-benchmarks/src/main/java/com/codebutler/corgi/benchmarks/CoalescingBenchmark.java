@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time for a burst of duplicate requests for a key nobody has fetched yet to all be answered. The
+ * first request goes to the fake network and the rest wait on it, so this measures the in-flight
+ * bookkeeping and the release of waiting requests. Several threads run bursts at once to contend
+ * on that bookkeeping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoalescingBenchmark {
+    /** Requests in each burst, all for the same key. */
+    @Param({ "1", "16" })
+    public int duplicates;
+
+    /** Time the fake network takes to answer. */
+    @Param({ "0", "1" })
+    public long latencyMillis;
+
+    private final AtomicLong mKeyCounter = new AtomicLong();
+    private CorgiHarness mHarness;
+
+    @Setup
+    public void setUp() throws Exception {
+        mHarness = new CorgiHarness();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mHarness.stop();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void burst() throws Exception {
+        String key = "coalesce_" + mKeyCounter.incrementAndGet();
+        Payload payload = Payload.create(key, Payload.SMALL);
+        FakeRequest[] requests = new FakeRequest[duplicates];
+        for (int i = 0; i < duplicates; i++) {
+            requests[i] = new FakeRequest(key, payload, latencyMillis);
+        }
+        mHarness.fetchAndWait(key, requests);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.Corgi;
+import com.codebutler.corgi.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A started {@link Corgi} over a temporary cache directory, plus a way to wait for the responses
+ * to given {@link Payload}s.
+ */
+class CorgiHarness implements Corgi.Listener {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final ConcurrentHashMap<String, CountDownLatch> mLatches = new ConcurrentHashMap<String, CountDownLatch>();
+    private final File mCacheDir;
+    private final Corgi mCorgi;
+
+    CorgiHarness() throws IOException {
+        mCacheDir = CacheDirs.create();
+        mCorgi = new Corgi.Builder(mCacheDir, this).build();
+        mCorgi.start();
+    }
+
+    Corgi getCorgi() {
+        return mCorgi;
+    }
+
+    @Override
+    public void onResponse(Response response) {
+        Object object = response.getObject();
+        if (object instanceof Payload) {
+            CountDownLatch latch = mLatches.get(((Payload) object).getId());
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Fetches every request in {@code requests}, then waits for all of their responses. Requests
+     * with the same cache key must share a payload id equal to that key, and each must be a
+     * separate object.
+     */
+    void fetchAndWait(String cacheKey, FakeRequest... requests) throws InterruptedException, TimeoutException {
+        CountDownLatch latch = new CountDownLatch(requests.length);
+        mLatches.put(cacheKey, latch);
+        try {
+            for (FakeRequest request : requests) {
+                mCorgi.fetch(request);
+            }
+            if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new TimeoutException("Timed out waiting for " + cacheKey);
+            }
+        } finally {
+            mLatches.remove(cacheKey);
+        }
+    }
+
+    void stop() {
+        mCorgi.stop();
+        CacheDirs.delete(mCacheDir);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.CorgiMetrics;
+import com.codebutler.corgi.CorgiThreadFactory;
+import com.codebutler.corgi.DiskCache;
+import com.codebutler.corgi.LruDiskCache;
+import com.codebutler.corgi.Response;
+import com.codebutler.corgi.SegmentDiskCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of a {@link DiskCache} hit: finding the entry, reading it and decoding it.
+ * The files will mostly be in the OS page cache, as they would be for a hot entry on a device.
+ * Compares the DiskLruCache backend with the memory-mapped segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiskHitBenchmark {
+    private static final int ENTRY_COUNT = 256;
+    private static final long MAX_SIZE   = 512 * 1024 * 1024;
+
+    @Param({ "small", "large" })
+    public String size;
+
+    @Param({ "lru", "segments" })
+    public String backend;
+
+    private File mCacheDir;
+    private DiskCache mDiskCache;
+    private FakeRequest[] mRequests;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int mIndex = (int) Thread.currentThread().getId();
+
+        int next() {
+            return (mIndex++) & (ENTRY_COUNT - 1);
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        int items = size.equals("large") ? Payload.LARGE : Payload.SMALL;
+        mCacheDir  = CacheDirs.create();
+        mDiskCache = backend.equals("segments")
+            ? new SegmentDiskCache(mCacheDir, 1, MAX_SIZE, new CorgiThreadFactory(), CorgiMetrics.DISABLED)
+            : new LruDiskCache(mCacheDir, 1, MAX_SIZE, new CorgiThreadFactory(), CorgiMetrics.DISABLED);
+        mRequests  = new FakeRequest[ENTRY_COUNT];
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            String key = "disk_hit_" + i;
+            Payload payload = Payload.create(key, items);
+            mRequests[i] = new FakeRequest(key, payload);
+            mDiskCache.put(key, new FakeResponse(payload));
+        }
+        mDiskCache.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        CacheDirs.delete(mCacheDir);
+    }
+
+    @Benchmark
+    public Response read(Cursor cursor) throws Exception {
+        return mDiskCache.read(mRequests[cursor.next()]);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.GsonRequest;
+import com.codebutler.corgi.GsonResponse;
+import com.codebutler.corgi.RequestCallback;
+
+/**
+ * Stands in for a network request: {@link #fetch} sleeps for a fixed latency, then completes with
+ * a prebuilt payload.
+ */
+public class FakeRequest extends GsonRequest<Payload> {
+    private final String mCacheKey;
+    private final Payload mPayload;
+    private final long mLatencyMillis;
+
+    public FakeRequest(String cacheKey, Payload payload) {
+        this(cacheKey, payload, 0);
+    }
+
+    public FakeRequest(String cacheKey, Payload payload, long latencyMillis) {
+        mCacheKey      = cacheKey;
+        mPayload       = payload;
+        mLatencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void fetch(RequestCallback<Payload> callback) {
+        if (mLatencyMillis > 0) {
+            try {
+                Thread.sleep(mLatencyMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        callback.onComplete(new FakeResponse(mPayload));
+    }
+
+    @Override
+    public String getCacheKey() {
+        return mCacheKey;
+    }
+
+    @Override
+    public Class<? extends GsonResponse<Payload>> getResponseClass() {
+        return FakeResponse.class;
+    }
+}
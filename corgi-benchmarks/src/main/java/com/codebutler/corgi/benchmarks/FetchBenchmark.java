@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.Corgi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Corgi#fetch} when every request is a memory hit, with 1, 2, 4 and 8 threads
+ * fetching at once. This covers the sequence counter, the memory cache and listener delivery.
+ * Each thread fetches its own request objects, since a request can't be fetched again while an
+ * earlier fetch of it is pending.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FetchBenchmark {
+    private static final int KEY_COUNT = 1024;
+
+    private CorgiHarness mHarness;
+    private Corgi mCorgi;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final FakeRequest[] mRequests = new FakeRequest[KEY_COUNT];
+        private int mIndex = (int) Thread.currentThread().getId();
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                String key = "fetch_" + i;
+                mRequests[i] = new FakeRequest(key, Payload.create(key, Payload.SMALL));
+            }
+        }
+
+        FakeRequest next() {
+            return mRequests[(mIndex++) & (KEY_COUNT - 1)];
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        mHarness = new CorgiHarness();
+        mCorgi = mHarness.getCorgi();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = "fetch_" + i;
+            // The first fetch goes through the fake network and fills the memory cache.
+            mHarness.fetchAndWait(key, new FakeRequest(key, Payload.create(key, Payload.SMALL)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mHarness.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void memoryHit1(Cursor cursor) {
+        mCorgi.fetch(cursor.next());
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void memoryHit2(Cursor cursor) {
+        mCorgi.fetch(cursor.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void memoryHit4(Cursor cursor) {
+        mCorgi.fetch(cursor.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void memoryHit8(Cursor cursor) {
+        mCorgi.fetch(cursor.next());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.ConcurrentLruCache;
+import com.codebutler.corgi.LruCache;
+import com.codebutler.corgi.MemoryCache;
+import com.codebutler.corgi.Response;
+import com.codebutler.corgi.ResponseWeigher;
+import com.codebutler.corgi.TinyLfuCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory cache hit throughput with 1, 2, 4 and 8 threads reading at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryCacheBenchmark {
+    private static final int KEY_COUNT = 1024;
+    private static final int MAX_SIZE  = 16 * 1024 * 1024;
+
+    @Param({ "concurrent", "lru", "tinylfu" })
+    public String cache;
+
+    private MemoryCache<String, Response> mCache;
+    private String[] mKeys;
+
+    /**
+     * Each thread walks the keys from its own position.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int mIndex = (int) Thread.currentThread().getId();
+
+        int next() {
+            return (mIndex++) & (KEY_COUNT - 1);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if (cache.equals("lru")) {
+            mCache = new LruCache<String, Response>(MAX_SIZE, new ResponseWeigher());
+        } else if (cache.equals("tinylfu")) {
+            mCache = new TinyLfuCache<String, Response>(MAX_SIZE, new ResponseWeigher());
+        } else {
+            mCache = new ConcurrentLruCache<String, Response>(MAX_SIZE, new ResponseWeigher());
+        }
+
+        mKeys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            mKeys[i] = "memory_hit_" + i;
+            mCache.put(mKeys[i], new FakeResponse(Payload.create(mKeys[i], Payload.SMALL)));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Response get1(Cursor cursor) {
+        return mCache.get(mKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Response get2(Cursor cursor) {
+        return mCache.get(mKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Response get4(Cursor cursor) {
+        return mCache.get(mKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Response get8(Cursor cursor) {
+        return mCache.get(mKeys[cursor.next()]);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.ConcurrentLruCache;
+import com.codebutler.corgi.LruCache;
+import com.codebutler.corgi.MemoryCache;
+import com.codebutler.corgi.Response;
+import com.codebutler.corgi.TinyLfuCache;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit ratio of each memory cache on a trace mixing a skewed set of hot keys with scans of keys
+ * read once, like paging through a long list. Each operation reads the next key of the trace and
+ * puts it on a miss. Compare the "hits" and "misses" counters rather than the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryCacheHitRatioBenchmark {
+    private static final int TRACE_LENGTH = 1 << 20;
+    private static final int HOT_KEYS     = 5000;
+    private static final int PHASE_LENGTH = 5000;
+
+    @Param({ "concurrent", "lru", "tinylfu" })
+    public String cache;
+
+    /** Maximum number of entries. */
+    @Param({ "500", "2000" })
+    public int size;
+
+    private MemoryCache<String, Response> mCache;
+    private String[] mTrace;
+    private Response mResponse;
+    private int mIndex;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if (cache.equals("lru")) {
+            mCache = new LruCache<String, Response>(size);
+        } else if (cache.equals("tinylfu")) {
+            mCache = new TinyLfuCache<String, Response>(size, null);
+        } else {
+            mCache = new ConcurrentLruCache<String, Response>(size);
+        }
+        mResponse = new FakeResponse(Payload.create("hit_ratio", Payload.SMALL));
+
+        // Two phases of hot reads, skewed towards the lowest keys, then one phase of a scan.
+        Random random = new Random(42);
+        int scanned = 0;
+        mTrace = new String[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            if ((i / PHASE_LENGTH) % 3 == 2) {
+                mTrace[i] = "scan_" + (scanned++);
+            } else {
+                mTrace[i] = "hot_" + (int) (Math.pow(random.nextDouble(), 3) * HOT_KEYS);
+            }
+        }
+    }
+
+    @Benchmark
+    public Response access(Counters counters) {
+        String key = mTrace[mIndex];
+        mIndex = (mIndex + 1) & (TRACE_LENGTH - 1);
+        Response response = mCache.get(key);
+        if (response != null) {
+            counters.hits++;
+            return response;
+        }
+        counters.misses++;
+        mCache.put(key, mResponse);
+        return mResponse;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A typical API model: a few scalar fields and a list of nested items.
+ */
+public class Payload {
+    /** Items in a small payload, about half a kilobyte of JSON. */
+    public static final int SMALL = 4;
+
+    /** Items in a large payload, about a hundred kilobytes of JSON. */
+    public static final int LARGE = 800;
+
+    String mId;
+    String mTitle;
+    long mUpdatedAt;
+    List<Item> mItems;
+
+    public static Payload create(String id, int itemCount) {
+        Payload payload = new Payload();
+        payload.mId        = id;
+        payload.mTitle     = "Payload " + id;
+        payload.mUpdatedAt = 1380000000000L;
+        payload.mItems     = new ArrayList<Item>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            Item item = new Item();
+            item.mId          = i;
+            item.mName        = "Item " + i;
+            item.mDescription = "Description of item " + i + " in " + id;
+            item.mPrice       = i * 0.25;
+            item.mAvailable   = (i % 3) != 0;
+            payload.mItems.add(item);
+        }
+        return payload;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public static class Item {
+        int mId;
+        String mName;
+        String mDescription;
+        double mPrice;
+        boolean mAvailable;
+    }
+}
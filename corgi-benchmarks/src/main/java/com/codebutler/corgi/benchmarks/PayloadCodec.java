@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.BinaryCacheCodec;
+import com.codebutler.corgi.Response;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Binary encoding of {@link Payload}, to compare against Gson.
+ */
+public class PayloadCodec extends BinaryCacheCodec<Payload> {
+    private static final int SCHEMA_VERSION = 1;
+
+    public PayloadCodec() {
+        super(SCHEMA_VERSION);
+    }
+
+    @Override
+    protected void writeObject(Payload payload, DataOutput output) throws IOException {
+        writeString(output, payload.mId);
+        writeString(output, payload.mTitle);
+        output.writeLong(payload.mUpdatedAt);
+        output.writeInt(payload.mItems.size());
+        for (Payload.Item item : payload.mItems) {
+            output.writeInt(item.mId);
+            writeString(output, item.mName);
+            writeString(output, item.mDescription);
+            output.writeDouble(item.mPrice);
+            output.writeBoolean(item.mAvailable);
+        }
+    }
+
+    @Override
+    protected Payload readObject(DataInput input) throws IOException {
+        Payload payload = new Payload();
+        payload.mId        = readString(input);
+        payload.mTitle     = readString(input);
+        payload.mUpdatedAt = input.readLong();
+        int count = input.readInt();
+        payload.mItems = new ArrayList<Payload.Item>(count);
+        for (int i = 0; i < count; i++) {
+            Payload.Item item = new Payload.Item();
+            item.mId          = input.readInt();
+            item.mName        = readString(input);
+            item.mDescription = readString(input);
+            item.mPrice       = input.readDouble();
+            item.mAvailable   = input.readBoolean();
+            payload.mItems.add(item);
+        }
+        return payload;
+    }
+
+    @Override
+    protected Response<Payload> createResponse(Date date, Payload payload) {
+        return new FakeResponse(payload);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi.benchmarks;
+
+import com.codebutler.corgi.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading a cached response with {@link com.codebutler.corgi.GsonResponse#write},
+ * {@link com.codebutler.corgi.GsonRequest#readResponse} and, for comparison, a
+ * {@link com.codebutler.corgi.BinaryCacheCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({ "small", "large" })
+    public String size;
+
+    private FakeRequest mRequest;
+    private FakeResponse mResponse;
+    private PayloadCodec mCodec;
+    private byte[] mGsonBytes;
+    private byte[] mBinaryBytes;
+    private ByteArrayOutputStream mOutput;
+
+    @Setup
+    public void setUp() throws Exception {
+        int items = size.equals("large") ? Payload.LARGE : Payload.SMALL;
+        Payload payload = Payload.create("serialization", items);
+        mRequest  = new FakeRequest("serialization", payload);
+        mResponse = new FakeResponse(payload);
+        mCodec    = new PayloadCodec();
+
+        mOutput = new ByteArrayOutputStream();
+        mResponse.write(mOutput);
+        mGsonBytes = mOutput.toByteArray();
+
+        mOutput.reset();
+        mCodec.write(mResponse, mOutput);
+        mBinaryBytes = mOutput.toByteArray();
+    }
+
+    @Benchmark
+    public int gsonWrite() throws Exception {
+        mOutput.reset();
+        mResponse.write(mOutput);
+        return mOutput.size();
+    }
+
+    @Benchmark
+    public Response gsonRead() throws Exception {
+        return mRequest.readResponse(new ByteArrayInputStream(mGsonBytes));
+    }
+
+    @Benchmark
+    public int binaryWrite() throws Exception {
+        mOutput.reset();
+        mCodec.write(mResponse, mOutput);
+        return mOutput.size();
+    }
+
+    @Benchmark
+    public Response binaryRead() throws Exception {
+        return mCodec.read(new ByteArrayInputStream(mBinaryBytes));
+    }
+}
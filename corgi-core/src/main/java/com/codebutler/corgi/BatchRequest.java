@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Several requests travelling through a queue as one, created by {@link Corgi#fetchAll}.
+ *
+ * <p>In the disk cache queue, it holds the cache misses of one call, which are read together. In
+ * the request queue, it holds requests merged by {@link Request#createBatch} and fetches the
+ * merged request. Responses the merged request reports with
+ * {@link RequestCallback#onExtraResponse} go to the request with that cache key.
+ */
+class BatchRequest extends Request<Object> {
+    /** The merged request, or null in the disk cache queue. */
+    private final Request mUpstream;
+
+    /** Requests not answered yet. Guarded by this. */
+    private final List<Request> mRequests;
+
+    BatchRequest(List<Request> requests) {
+        this(null, requests);
+    }
+
+    BatchRequest(Request upstream, List<Request> requests) {
+        mUpstream = upstream;
+        mRequests = new ArrayList<Request>(requests);
+
+        // Go as soon as the most urgent request would have.
+        Priority priority = Priority.PREFETCH;
+        long sequence = Long.MAX_VALUE;
+        for (Request request : requests) {
+            if (request.getPriority().ordinal() < priority.ordinal()) {
+                priority = request.getPriority();
+            }
+            sequence = Math.min(sequence, request.getSequence());
+        }
+        setPriority(priority);
+        setSequence(sequence);
+        setCheckCache(false);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void fetch(RequestCallback<Object> callback) {
+        if (mUpstream == null) {
+            throw new IllegalStateException("Not a merged request");
+        }
+        mUpstream.fetch(callback);
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return (mUpstream != null) ? mUpstream.getRetryPolicy() : null;
+    }
+
+    @Override
+    public CachePolicy getCachePolicy() {
+        return (mUpstream != null) ? mUpstream.getCachePolicy() : null;
+    }
+
+    @Override
+    public String getHost() {
+        return (mUpstream != null) ? mUpstream.getHost() : null;
+    }
+
+    synchronized List<Request> getRequests() {
+        return new ArrayList<Request>(mRequests);
+    }
+
+    /**
+     * Removes and returns the request for {@code cacheKey}, or returns null if there is none.
+     */
+    synchronized Request take(String cacheKey) {
+        Iterator<Request> iterator = mRequests.iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (cacheKey.equals(request.getCacheKey())) {
+                iterator.remove();
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes and returns the requests not yet answered.
+     */
+    synchronized List<Request> takeRemaining() {
+        List<Request> requests = new ArrayList<Request>(mRequests);
+        mRequests.clear();
+        return requests;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchRequest{upstream=" + mUpstream + ", requests=" + getRequests() + "}";
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact binary {@link CacheCodec}.
+ *
+ * <p>Entries start with a small header: a magic byte, the codec's schema version, the compression
+ * used for the body, and the response date. The body is written by {@link #writeObject} and read
+ * back by {@link #readObject}, using the length-prefixed helpers below. Bumping the schema version
+ * makes entries written with older versions unreadable, so they are dropped and fetched again.
+ */
+public abstract class BinaryCacheCodec<T> implements CacheCodec<T> {
+    private static final int MAGIC = 0xC0;
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public enum Compression {
+        NONE,
+        DEFLATE
+    }
+
+    private final int mSchemaVersion;
+    private final Compression mCompression;
+
+    protected BinaryCacheCodec(int schemaVersion) {
+        this(schemaVersion, Compression.NONE);
+    }
+
+    /**
+     * @param schemaVersion version of the body layout, 0 to 255.
+     * @param compression compression applied to the body.
+     */
+    protected BinaryCacheCodec(int schemaVersion, Compression compression) {
+        if (schemaVersion < 0 || schemaVersion > 255) {
+            throw new IllegalArgumentException("schemaVersion must be between 0 and 255");
+        }
+        if (compression == null) {
+            throw new IllegalArgumentException("compression is required");
+        }
+        mSchemaVersion = schemaVersion;
+        mCompression   = compression;
+    }
+
+    /**
+     * Writes the fields of {@code object}.
+     */
+    protected abstract void writeObject(T object, DataOutput output) throws IOException;
+
+    /**
+     * Reads the fields written by {@link #writeObject}.
+     */
+    protected abstract T readObject(DataInput input) throws IOException;
+
+    /**
+     * Creates the response for an object read from the cache.
+     */
+    protected abstract Response<T> createResponse(Date date, T object);
+
+    @Override
+    public void write(Response<T> response, OutputStream stream) throws IOException {
+        if (!response.success()) {
+            throw new IllegalArgumentException("Only successful responses can be cached");
+        }
+
+        DataOutputStream header = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        header.writeByte(MAGIC);
+        header.writeByte(mSchemaVersion);
+        header.writeByte(mCompression.ordinal());
+        header.writeLong(response.getDate().getTime());
+
+        if (mCompression == Compression.DEFLATE) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream deflaterStream = new DeflaterOutputStream(header, deflater, BUFFER_SIZE);
+                DataOutputStream body = new DataOutputStream(deflaterStream);
+                writeObject(response.getObject(), body);
+                body.flush();
+                deflaterStream.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            writeObject(response.getObject(), header);
+        }
+        header.flush();
+    }
+
+    @Override
+    public Response<T> read(InputStream stream) throws IOException {
+        DataInputStream header = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        if (header.readUnsignedByte() != MAGIC) {
+            throw new IOException("Not a binary cache entry");
+        }
+        int schemaVersion = header.readUnsignedByte();
+        if (schemaVersion != mSchemaVersion) {
+            throw new IOException("Unexpected schema version " + schemaVersion + ", expected " + mSchemaVersion);
+        }
+        int compression = header.readUnsignedByte();
+        if (compression >= Compression.values().length) {
+            throw new IOException("Unknown compression " + compression);
+        }
+        Date date = new Date(header.readLong());
+
+        T object;
+        if (Compression.values()[compression] == Compression.DEFLATE) {
+            Inflater inflater = new Inflater();
+            try {
+                object = readObject(new DataInputStream(new InflaterInputStream(header, inflater, BUFFER_SIZE)));
+            } finally {
+                inflater.end();
+            }
+        } else {
+            object = readObject(header);
+        }
+        return createResponse(date, object);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string. Unlike {@link DataOutput#writeUTF}, there is no 64K
+     * limit, and null is allowed.
+     */
+    protected static void writeString(DataOutput output, String value) throws IOException {
+        writeBytes(output, (value != null) ? value.getBytes(UTF_8) : null);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     */
+    protected static String readString(DataInput input) throws IOException {
+        byte[] bytes = readBytes(input);
+        return (bytes != null) ? new String(bytes, UTF_8) : null;
+    }
+
+    /**
+     * Writes a length-prefixed byte array. Null is allowed.
+     */
+    protected static void writeBytes(DataOutput output, byte[] value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBytes}.
+     */
+    protected static byte[] readBytes(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < -1) {
+            throw new IOException("Invalid length " + length);
+        }
+        if (length == -1) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        input.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts responses to and from their disk cache representation.
+ *
+ * <p>A request type picks its codec by returning it from {@link Request#getCacheCodec()}, and its
+ * response type by returning the same codec from {@link Response#getCacheCodec()}.
+ */
+public interface CacheCodec<T> {
+    /**
+     * Writes {@code response} to {@code stream}. Does not close the stream.
+     */
+    void write(Response<T> response, OutputStream stream) throws Exception;
+
+    /**
+     * Reads a response written by {@link #write}. Does not close the stream.
+     */
+    Response<T> read(InputStream stream) throws Exception;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public abstract class CacheKey {
+    /** DiskLruCache keys are at most 64 characters of [a-z0-9_-]. */
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private static final String SEPARATOR = "__";
+
+    /** Digest bytes kept in hashed keys: 128 bits, or 32 hex characters. */
+    private static final int HASH_BYTES = 16;
+
+    /** Room left for the readable prefix of hashed keys, after the hash and a dash. */
+    private static final int MAX_PREFIX_LENGTH = MAX_KEY_LENGTH - (HASH_BYTES * 2) - 1;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException("SHA-256 not available", ex);
+            }
+        }
+    };
+
+    /**
+     * Joins {@code parts} into a readable key. Characters other than [a-z0-9_-] become '_', and
+     * the key is truncated to 64 characters, so distinct parts may map to the same key. Use
+     * {@link #hashed} when that matters.
+     */
+    public static String with(Object... parts) {
+        StringBuilder key = new StringBuilder(MAX_KEY_LENGTH);
+        for (int i = 0; i < parts.length; i++) {
+            String part = toString(parts[i]);
+            if (i > 0) {
+                key.append(SEPARATOR);
+            }
+            appendEncoded(key, part, MAX_KEY_LENGTH);
+        }
+        return (key.length() > MAX_KEY_LENGTH) ? key.substring(0, MAX_KEY_LENGTH) : key.toString();
+    }
+
+    /**
+     * Joins {@code parts} into a collision-free key of at most 64 characters: a readable prefix,
+     * encoded like {@link #with} and truncated, followed by a dash and a 128-bit SHA-256 digest of
+     * the full, unencoded parts.
+     */
+    public static String hashed(Object... parts) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+
+        StringBuilder key = new StringBuilder(MAX_KEY_LENGTH);
+        for (int i = 0; i < parts.length; i++) {
+            String part = toString(parts[i]);
+
+            // Length-prefix each part so different splits of the same characters don't collide.
+            byte[] bytes = part.getBytes(UTF_8);
+            digest.update((byte) (bytes.length >>> 24));
+            digest.update((byte) (bytes.length >>> 16));
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+
+            if (key.length() < MAX_PREFIX_LENGTH) {
+                if (i > 0) {
+                    key.append(SEPARATOR);
+                }
+                appendEncoded(key, part, MAX_PREFIX_LENGTH);
+            }
+        }
+        if (key.length() > MAX_PREFIX_LENGTH) {
+            key.setLength(MAX_PREFIX_LENGTH);
+        }
+
+        key.append('-');
+        byte[] hash = digest.digest();
+        for (int i = 0; i < HASH_BYTES; i++) {
+            key.append(HEX_DIGITS[(hash[i] >> 4) & 0xf]);
+            key.append(HEX_DIGITS[hash[i] & 0xf]);
+        }
+        return key.toString();
+    }
+
+    private static String toString(Object part) {
+        if (part == null) {
+            throw new IllegalArgumentException("Cache key cannot contain null components.");
+        }
+        return part.toString();
+    }
+
+    /**
+     * Appends {@code name} with every character outside [a-z0-9_-] replaced by '_', stopping once
+     * {@code key} reaches {@code limit} characters.
+     */
+    private static void appendEncoded(StringBuilder key, String name, int limit) {
+        for (int i = 0; i < name.length() && key.length() < limit; i++) {
+            char c = name.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+            key.append(allowed ? c : '_');
+        }
+    }
+}
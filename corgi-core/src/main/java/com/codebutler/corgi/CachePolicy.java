@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+public class CachePolicy {
+    public static final CachePolicy NO_CACHE = new CachePolicy(0);
+    public static final CachePolicy FOREVER  = new CachePolicy(Long.MAX_VALUE);
+
+    public static class Builder {
+        private long    mMaxAge               = 0;
+        private boolean mKeepInMemory         = true;
+        private long    mStaleWhileRevalidate = 0;
+        private long    mErrorMaxAge          = 0;
+
+        public Builder maxAge(long maxAge) {
+            mMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * How long, in milliseconds, after {@code maxAge} has passed an expired response may
+         * still be delivered while a single background request refreshes it.
+         */
+        public Builder staleWhileRevalidate(long staleWhileRevalidate) {
+            mStaleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        /**
+         * How long, in milliseconds, a failed response is remembered. Until then, requests for
+         * the same cache key get the failure again without being fetched. Failures are only kept
+         * in memory.
+         */
+        public Builder errorMaxAge(long errorMaxAge) {
+            mErrorMaxAge = errorMaxAge;
+            return this;
+        }
+
+        public Builder keepInMemory(boolean keepInMemory) {
+            mKeepInMemory = keepInMemory;
+            return this;
+        }
+
+        public CachePolicy build() {
+            return new CachePolicy(mMaxAge, mKeepInMemory, mStaleWhileRevalidate, mErrorMaxAge);
+        }
+    }
+
+    private final long    mMaxAge;
+    private final boolean mKeepInMemory;
+    private final long    mStaleWhileRevalidate;
+    private final long    mErrorMaxAge;
+
+    public CachePolicy(long maxAge) {
+        this(maxAge, true);
+    }
+
+    CachePolicy(long maxAge, boolean keepInMemory) {
+        this(maxAge, keepInMemory, 0);
+    }
+
+    CachePolicy(long maxAge, boolean keepInMemory, long staleWhileRevalidate) {
+        this(maxAge, keepInMemory, staleWhileRevalidate, 0);
+    }
+
+    CachePolicy(long maxAge, boolean keepInMemory, long staleWhileRevalidate, long errorMaxAge) {
+        mMaxAge               = maxAge;
+        mKeepInMemory         = keepInMemory;
+        mStaleWhileRevalidate = staleWhileRevalidate;
+        mErrorMaxAge          = errorMaxAge;
+    }
+
+    public long getMaxAge() {
+        return mMaxAge;
+    }
+
+    public boolean shouldKeepInMemory() {
+        return mKeepInMemory;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return mStaleWhileRevalidate;
+    }
+
+    public long getErrorMaxAge() {
+        return mErrorMaxAge;
+    }
+}
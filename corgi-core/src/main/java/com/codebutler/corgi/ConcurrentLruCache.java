@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryCache} that approximates LRU with the CLOCK algorithm so that reads never take
+ * a lock.
+ *
+ * <p>Entries live in a {@link ConcurrentHashMap}. A hit only sets the entry's reference bit.
+ * Writes are split over segments by key hash; each segment keeps a ring of its entries, guarded
+ * by the segment's monitor. The maximum size applies to the cache as a whole. When it is
+ * exceeded, clock hands sweep the rings, clearing reference bits and evicting the first entries
+ * that have not been read since the last sweep. The segment written to goes first while it holds
+ * more than its even share, then the segments take turns, so a single entry larger than a share
+ * still stays.
+ */
+public class ConcurrentLruCache<K, V> implements MemoryCache<K, V> {
+    private static final int MAX_SEGMENTS = 64;
+
+    private final ConcurrentHashMap<K, Node<K, V>> mMap;
+    private final Segment<K, V>[] mSegments;
+    private final int mSegmentMask;
+    private final int mMaxSize;
+    private final Weigher<? super K, ? super V> mWeigher;
+
+    /** Sum of the sizes of all entries, updated under the monitor of the entry's segment. */
+    private final AtomicLong mSize = new AtomicLong();
+
+    /** Spreads the segments that start eviction sweeps. */
+    private final AtomicInteger mEvictionCursor = new AtomicInteger();
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * @param maxSize the maximum sum of the sizes of the entries in this cache.
+     * @param weigher computes entry sizes, or null to count entries.
+     */
+    public ConcurrentLruCache(int maxSize, Weigher<? super K, ? super V> weigher) {
+        this(maxSize, Runtime.getRuntime().availableProcessors() * 4, weigher);
+    }
+
+    /**
+     * @param maxSize the maximum sum of the sizes of the entries in this cache.
+     * @param concurrencyLevel the expected number of threads writing to the cache at once.
+     * @param weigher computes entry sizes, or null to count entries.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int maxSize, int concurrencyLevel, Weigher<? super K, ? super V> weigher) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+
+        // Power of two segments. They only spread writes; the size limit is shared.
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS) {
+            segmentCount <<= 1;
+        }
+
+        mMaxSize     = maxSize;
+        mWeigher     = weigher;
+        mSegmentMask = segmentCount - 1;
+        mSegments    = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentShare = (maxSize / segmentCount) + (i < (maxSize % segmentCount) ? 1 : 0);
+            mSegments[i] = new Segment<K, V>(segmentShare, mSize);
+        }
+        mMap = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, segmentCount);
+    }
+
+    @Override
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Node<K, V> node = mMap.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Avoid dirtying the cache line when the bit is already set.
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    @Override
+    public final boolean containsKey(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return mMap.containsKey(key);
+    }
+
+    @Override
+    public final V peek(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        Node<K, V> node = mMap.get(key);
+        return (node != null) ? node.value : null;
+    }
+
+    @Override
+    public final V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public final boolean putIfAbsent(K key, V value) {
+        return put(key, value, true) == null;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}, unless {@code onlyIfAbsent} and {@code key} is
+     * already cached. Returns the value {@code key} was mapped to.
+     */
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        int size = safeSizeOf(key, value);
+        Segment<K, V> segment = segmentFor(key);
+        Node<K, V> node;
+        V previous = null;
+        synchronized (segment) {
+            node = mMap.get(key);
+            if (node != null && onlyIfAbsent) {
+                return node.value;
+            }
+            segment.putCount++;
+            if (node != null) {
+                previous = node.value;
+                segment.resize(node, size);
+                node.value = value;
+                node.referenced = true;
+            } else {
+                node = new Node<K, V>(key, value, size);
+                mMap.put(key, node);
+                segment.link(node);
+                keyAdded(key);
+            }
+        }
+        List<Node<K, V>> evicted = trim(segment, node);
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+        notifyEvicted(evicted);
+        return previous;
+    }
+
+    @Override
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        V previous;
+        synchronized (segment) {
+            Node<K, V> node = mMap.remove(key);
+            if (node == null) {
+                return null;
+            }
+            segment.unlink(node);
+            keyRemoved(key);
+            previous = node.value;
+        }
+
+        entryRemoved(false, key, previous, null);
+        return previous;
+    }
+
+    @Override
+    public final boolean remove(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = mMap.get(key);
+            if (node == null || !value.equals(node.value)) {
+                return false;
+            }
+            mMap.remove(key);
+            segment.unlink(node);
+            keyRemoved(key);
+        }
+
+        entryRemoved(false, key, value, null);
+        return true;
+    }
+
+    @Override
+    public final void evictAll() {
+        for (Segment<K, V> segment : mSegments) {
+            List<Node<K, V>> evicted = new ArrayList<Node<K, V>>();
+            synchronized (segment) {
+                while (segment.hand != null) {
+                    evicted.add(evict(segment, segment.hand));
+                }
+            }
+            notifyEvicted(evicted);
+        }
+    }
+
+    /**
+     * Evicts entries until the cache fits in its maximum size after {@code added} was put into
+     * {@code segment}. That segment is swept first while it holds more than its share, then each
+     * segment in turn gives up one entry at a time. {@code added} itself is only evicted if it
+     * can never fit, before anything else. Takes one segment monitor at a time, so must be called without any held.
+     */
+    private List<Node<K, V>> trim(Segment<K, V> segment, Node<K, V> added) {
+        List<Node<K, V>> evicted = null;
+        if (added.size > mMaxSize) {
+            synchronized (segment) {
+                if (mMap.get(added.key) == added) {
+                    evicted = append(evicted, evict(segment, added));
+                }
+            }
+        }
+        synchronized (segment) {
+            while (mSize.get() > mMaxSize && segment.size > segment.share) {
+                Node<K, V> node = sweep(segment, added);
+                if (node == null) {
+                    break;
+                }
+                evicted = append(evicted, node);
+            }
+        }
+
+        int start = mEvictionCursor.getAndIncrement();
+        int idle = 0;
+        for (int i = start; mSize.get() > mMaxSize && idle < mSegments.length; i++) {
+            Segment<K, V> next = mSegments[i & mSegmentMask];
+            Node<K, V> node;
+            synchronized (next) {
+                node = sweep(next, added);
+            }
+            if (node == null) {
+                idle++;
+            } else {
+                idle = 0;
+                evicted = append(evicted, node);
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Sweeps the segment's clock hand to the first entry other than {@code skip} that has not
+     * been read since the last sweep, and evicts it. Returns null if there is no other entry.
+     * Must be called with the segment's monitor held.
+     */
+    private Node<K, V> sweep(Segment<K, V> segment, Node<K, V> skip) {
+        // Readers may set bits again behind the hand; after two laps, take the next entry anyway.
+        int steps = 2 * segment.count;
+        Node<K, V> node = segment.hand;
+        while (node != null && !(node == skip && segment.count == 1)) {
+            if (node != skip) {
+                if (!node.referenced || steps <= 0) {
+                    return evict(segment, node);
+                }
+                // Recently read: give it another trip around the clock.
+                node.referenced = false;
+            }
+            node = node.next;
+            segment.hand = node;
+            steps--;
+        }
+        return null;
+    }
+
+    /** Removes {@code node} to make space. Must be called with the segment's monitor held. */
+    private Node<K, V> evict(Segment<K, V> segment, Node<K, V> node) {
+        segment.unlink(node);
+        mMap.remove(node.key);
+        segment.evictionCount++;
+        keyRemoved(node.key);
+        return node;
+    }
+
+    private static <K, V> List<Node<K, V>> append(List<Node<K, V>> list, Node<K, V> node) {
+        if (list == null) {
+            list = new ArrayList<Node<K, V>>();
+        }
+        list.add(node);
+        return list;
+    }
+
+    private void notifyEvicted(List<Node<K, V>> evicted) {
+        if (evicted == null) {
+            return;
+        }
+        for (Node<K, V> node : evicted) {
+            entryRemoved(true, node.key, node.value, null);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return mSegments[hash & mSegmentMask];
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called when a new key enters the cache. Unlike {@link #entryRemoved}, this is called while
+     * holding the lock that guards the key, so calls for the same key never interleave with
+     * {@link #keyRemoved}. Must be fast and must not call back into the cache. The default
+     * implementation does nothing.
+     */
+    protected void keyAdded(K key) {}
+
+    /**
+     * Called when a key leaves the cache, whether evicted or removed, under the same lock as
+     * {@link #keyAdded}. The default implementation does nothing.
+     */
+    protected void keyRemoved(K key) {}
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation asks the cache's
+     * {@link Weigher}, or returns 1 if there is none so that size is the number
+     * of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(K key, V value) {
+        return (mWeigher != null) ? mWeigher.weigh(key, value) : 1;
+    }
+
+    @Override
+    public final int size() {
+        return (int) mSize.get();
+    }
+
+    @Override
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.putCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache. Within each segment, entries are
+     * ordered from the clock hand onwards, which is roughly least to most recently used.
+     */
+    @Override
+    public final Map<K, V> snapshot() {
+        Map<K, V> snapshot = new LinkedHashMap<K, V>();
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                Node<K, V> node = segment.hand;
+                if (node == null) {
+                    continue;
+                }
+                do {
+                    snapshot.put(node.key, node.value);
+                    node = node.next;
+                } while (node != segment.hand);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override public final String toString() {
+        return String.format("ConcurrentLruCache[maxSize=%d,segments=%d]", mMaxSize, mSegments.length);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile boolean referenced;
+
+        // Guarded by the owning segment's monitor.
+        int size;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int size) {
+            this.key        = key;
+            this.value      = value;
+            this.size       = size;
+            this.referenced = true;
+        }
+    }
+
+    /**
+     * A stripe of the cache with its own clock ring. All fields are guarded by the segment's
+     * monitor.
+     */
+    private static final class Segment<K, V> {
+        /** Even share of the maximum size; the segment may hold more while others have room. */
+        final int share;
+
+        /** The cache's total size, kept in step with {@link #size}. */
+        final AtomicLong total;
+
+        int size;
+        int count;
+        int putCount;
+        int evictionCount;
+
+        /** The clock hand; the next entry to be considered for eviction. Null when empty. */
+        Node<K, V> hand;
+
+        Segment(int share, AtomicLong total) {
+            this.share = share;
+            this.total = total;
+        }
+
+        /** Changes the size of a linked node. */
+        void resize(Node<K, V> node, int newSize) {
+            size += newSize - node.size;
+            total.addAndGet(newSize - node.size);
+            node.size = newSize;
+        }
+
+        /** Inserts the node just behind the hand, so that it is the last one to be swept. */
+        void link(Node<K, V> node) {
+            size += node.size;
+            count++;
+            total.addAndGet(node.size);
+            if (hand == null) {
+                node.prev = node;
+                node.next = node;
+                hand = node;
+                return;
+            }
+            Node<K, V> tail = hand.prev;
+            node.prev = tail;
+            node.next = hand;
+            tail.next = node;
+            hand.prev = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            size -= node.size;
+            count--;
+            total.addAndGet(-node.size);
+            if (node.next == node) {
+                hand = null;
+            } else {
+                node.prev.next = node.next;
+                node.next.prev = node.prev;
+                if (hand == node) {
+                    hand = node.next;
+                }
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+}
@@ -0,0 +1,1041 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Based on code from Volley
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Based on code from Picasso
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Corgi {
+    private static final String TAG = "Corgi";
+
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    /** Maximum number of responses waiting to be written to disk. */
+    private static final int DISK_WRITE_QUEUE_CAPACITY = 64;
+
+    /** Maximum number of failed responses remembered. */
+    private static final int NEGATIVE_CACHE_SIZE = 256;
+
+    /** How long the warm-up pass may run by default, in milliseconds. */
+    private static final long DEFAULT_WARM_UP_TIME = 2000;
+
+    /**
+     * Staging area for requests that already have a duplicate request in flight.
+     *
+     * <ul>
+     *     <li>containsKey(cacheKey) indicates that there is a request in flight for the given cache
+     *          key.</li>
+     *     <li>get(cacheKey) returns waiting requests for the given cache key. The in flight request
+     *          is <em>not</em> contained in that list. Is null if no requests are staged.</li>
+     * </ul>
+     */
+    private final Map<String, Queue<Request>> mWaitingRequests =
+        new HashMap<String, Queue<Request>>();
+
+    /** The memory cache. */
+    private final MemoryCache<String, Response> mMemoryCache;
+
+    /** Failed responses within their error max age, kept apart from the memory cache. */
+    private final ConcurrentLruCache<String, Response> mNegativeCache =
+        new ConcurrentLruCache<String, Response>(NEGATIVE_CACHE_SIZE);
+
+    /** Keys in the memory cache, for removal by prefix. */
+    private final PrefixIndex mMemoryKeys = new PrefixIndex();
+
+    /** The disk cache. Opened in the background; see {@link DeferredDiskCache}. */
+    private DiskCache mDiskCache;
+
+    /** The disk cache dispatchers. */
+    private final DiskCacheDispatcher[] mDiskCacheDispatchers;
+
+    /** The request dispatchers. */
+    private final RequestDispatcher[] mRequestDispatchers;
+
+    /** Per-host fetch limit shared by the request dispatchers. */
+    private final HostLimiter mHostLimiter;
+
+    /** The response dispatcher. */
+    private ResponseDispatcher mResponseDispatcher;
+
+    /** The disk write dispatcher. */
+    private DiskWriteDispatcher mDiskWriteDispatcher;
+
+    /** Enforces fetch deadlines and runs delayed retries. */
+    private Watchdog mWatchdog;
+
+    /** The disk cache triage queue. */
+    private final PriorityBlockingQueue<Request> mDiskCacheQueue =
+        new PriorityBlockingQueue<Request>();
+
+    /** The queue of requests that need to be fetched. */
+    private final PriorityBlockingQueue<Request> mRequestQueue =
+        new PriorityBlockingQueue<Request>();
+
+    /** The queue of responses that need to be cached and delivered. */
+    private final PriorityBlockingQueue<RequestResponse> mResponseQueue =
+        new PriorityBlockingQueue<RequestResponse>();
+
+    /** Used for generating monotonically-increasing sequence numbers for requests. */
+    private final AtomicLong mSequenceGenerator = new AtomicLong();
+
+    /** Fetch deadlines and retries waiting to become due. */
+    private final DelayQueue<Watchdog.Task> mWatchdogQueue = new DelayQueue<Watchdog.Task>();
+
+    /** The queue of responses that need to be written to disk. */
+    private final DiskWriteQueue mDiskWriteQueue = new DiskWriteQueue(DISK_WRITE_QUEUE_CAPACITY);
+
+    /** Cache and dispatch metrics. */
+    private final CorgiMetrics mMetrics;
+
+    /** Retry policy for requests that don't have their own. */
+    private final RetryPolicy mRetryPolicy;
+
+    /** What duplicates get when the request they wait on fails. */
+    private final DuplicatePolicy mDuplicatePolicy;
+
+    /** Creates the dispatcher threads. */
+    private final ThreadFactory mThreadFactory;
+
+    /** Callback for finished responses, or null. */
+    private final Listener mListener;
+
+    /** Directory holding the disk cache and the saved hot keys. */
+    private final File mCacheDir;
+
+    /** Version of the app, to discard hot keys saved by other versions. */
+    private final int mAppVersion;
+
+    /** Sizes memory cache entries. */
+    private final Weigher<String, Response> mWeigher;
+
+    /** Recreates requests for the saved hot keys, or null if warm-up is off. */
+    private final RequestFactory mWarmUpFactory;
+
+    /** How long the warm-up pass may run, in milliseconds. */
+    private final long mWarmUpTime;
+
+    /** How many bytes the warm-up pass may load into the memory cache. */
+    private final int mWarmUpBytes;
+
+    /** The warm-up pass, while it may be running. */
+    private Thread mWarmUpThread;
+
+    /** Whether the warm-up pass was started. It only runs on the first start. */
+    private boolean mWarmUpStarted;
+
+    /**
+     * Incremented after entries are removed, so the warm-up pass can tell whether an entry it read
+     * from disk was removed in the meantime.
+     */
+    private final AtomicInteger mRemovals = new AtomicInteger();
+
+    /**
+     * What duplicates waiting on a request get when that request fails.
+     */
+    public enum DuplicatePolicy {
+        /**
+         * The same failed response. Waiting on a background refresh of a stale response, they are
+         * fetched again as with {@link #RETRY}, since nobody asked for the refresh.
+         */
+        SHARE_FAILURE,
+        /** One of them is fetched again, and the rest wait on that fetch instead. */
+        RETRY
+    }
+
+    /**
+     * How the disk cache stores its entries.
+     */
+    public enum DiskBackend {
+        /** One file per entry, managed by DiskLruCache. See {@link LruDiskCache}. */
+        DISK_LRU,
+        /** Entries appended to a few memory-mapped files. See {@link SegmentDiskCache}. */
+        SEGMENTS
+    }
+
+    /**
+     * How the memory cache decides what to evict.
+     */
+    public enum MemoryPolicy {
+        /** Least recently used, approximated with CLOCK. See {@link ConcurrentLruCache}. */
+        LRU,
+        /** Recency and frequency, resisting one-off scans. See {@link TinyLfuCache}. */
+        TINY_LFU
+    }
+
+    public static interface Listener {
+        void onResponse(Response response);
+    }
+
+    /**
+     * Recreates the request for a cache key, so its entry can be read from the disk cache. See
+     * {@link Builder#warmUp}.
+     */
+    public static interface RequestFactory {
+        /**
+         * Returns a request whose {@link Request#getCacheKey()} is {@code cacheKey}, or null to
+         * skip the key.
+         */
+        Request<?> create(String cacheKey);
+    }
+
+    public static class Builder {
+        private final File     mCacheDir;
+        private final Listener mListener;
+        private int            mAppVersion         = 1;
+        private int            mFetchThreads       = Utils.calculateFetchThreadCount();
+        private int            mDiskThreads        = Utils.calculateDiskThreadCount();
+        private int            mMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private Weigher<String, Response> mWeigher = new ResponseWeigher();
+        private SizeProvider   mSizeProvider       = new DefaultSizeProvider();
+        private ThreadFactory  mThreadFactory      = new CorgiThreadFactory();
+        private CorgiMetrics   mMetrics            = CorgiMetrics.DISABLED;
+        private RetryPolicy    mRetryPolicy        = RetryPolicy.NONE;
+        private DuplicatePolicy mDuplicatePolicy   = DuplicatePolicy.SHARE_FAILURE;
+        private DiskBackend    mDiskBackend        = DiskBackend.DISK_LRU;
+        private MemoryPolicy   mMemoryPolicy       = MemoryPolicy.LRU;
+        private RequestFactory mWarmUpFactory;
+        private long           mWarmUpTime         = DEFAULT_WARM_UP_TIME;
+        private int            mWarmUpBytes        = -1;
+
+        /**
+         * @param cacheDir Directory to keep the disk cache in
+         * @param listener Callback for all finished responses, or null to use only the
+         *                 {@link RequestFuture} returned by {@link Corgi#fetch}
+         */
+        public Builder(File cacheDir, Listener listener) {
+            if (cacheDir == null) {
+                throw new IllegalArgumentException("cacheDir is required");
+            }
+            mCacheDir = cacheDir;
+            mListener = listener;
+        }
+
+        /**
+         * Version of the app. Disk cache entries written by other versions are discarded.
+         * Defaults to 1.
+         */
+        public Builder appVersion(int appVersion) {
+            mAppVersion = appVersion;
+            return this;
+        }
+
+        /**
+         * Number of threads fetching requests concurrently. Defaults to one per core, between 2
+         * and 4.
+         */
+        public Builder fetchThreads(int fetchThreads) {
+            if (fetchThreads <= 0) {
+                throw new IllegalArgumentException("fetchThreads <= 0");
+            }
+            mFetchThreads = fetchThreads;
+            return this;
+        }
+
+        /**
+         * Number of threads reading and decoding disk cache hits concurrently. Defaults to one per
+         * core, up to 4.
+         */
+        public Builder diskThreads(int diskThreads) {
+            if (diskThreads <= 0) {
+                throw new IllegalArgumentException("diskThreads <= 0");
+            }
+            mDiskThreads = diskThreads;
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent fetches for requests sharing the same
+         * {@link Request#getHost()}. Use 0 for no limit.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 0) {
+                throw new IllegalArgumentException("maxRequestsPerHost < 0");
+            }
+            mMaxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Computes the size, in bytes, of memory cache entries. The memory cache evicts once the
+         * total exceeds its byte budget. Defaults to {@link ResponseWeigher}.
+         */
+        public Builder weigher(Weigher<String, Response> weigher) {
+            if (weigher == null) {
+                throw new IllegalArgumentException("weigher is required");
+            }
+            mWeigher = weigher;
+            return this;
+        }
+
+        /**
+         * Decides how large the memory and disk caches may grow. Defaults to
+         * {@link DefaultSizeProvider}.
+         */
+        public Builder sizeProvider(SizeProvider sizeProvider) {
+            if (sizeProvider == null) {
+                throw new IllegalArgumentException("sizeProvider is required");
+            }
+            mSizeProvider = sizeProvider;
+            return this;
+        }
+
+        /**
+         * Creates the dispatcher and cleanup threads. Defaults to {@link CorgiThreadFactory}.
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            if (threadFactory == null) {
+                throw new IllegalArgumentException("threadFactory is required");
+            }
+            mThreadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Collects hit rates, queue depths and latencies into {@code metrics}. Disabled by
+         * default.
+         */
+        public Builder metrics(CorgiMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics is required");
+            }
+            mMetrics = metrics;
+            return this;
+        }
+
+        /**
+         * Deadline and retry rules for requests whose {@link Request#getRetryPolicy()} returns
+         * null. Defaults to {@link RetryPolicy#NONE}, which leaves fetches without a deadline
+         * or retries as before; {@link RetryPolicy#DEFAULT} is a good starting point.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) {
+                throw new IllegalArgumentException("retryPolicy is required");
+            }
+            mRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * What duplicates waiting on an in-flight request get when it fails, after its retries.
+         * Successful responses are always shared. Defaults to
+         * {@link DuplicatePolicy#SHARE_FAILURE}.
+         */
+        public Builder duplicatePolicy(DuplicatePolicy duplicatePolicy) {
+            if (duplicatePolicy == null) {
+                throw new IllegalArgumentException("duplicatePolicy is required");
+            }
+            mDuplicatePolicy = duplicatePolicy;
+            return this;
+        }
+
+        /**
+         * How the disk cache stores its entries. Defaults to {@link DiskBackend#DISK_LRU}.
+         * Entries aren't carried over when switching backends.
+         */
+        public Builder diskBackend(DiskBackend diskBackend) {
+            if (diskBackend == null) {
+                throw new IllegalArgumentException("diskBackend is required");
+            }
+            mDiskBackend = diskBackend;
+            return this;
+        }
+
+        /**
+         * How the memory cache decides what to evict. Defaults to {@link MemoryPolicy#LRU}.
+         * {@link MemoryPolicy#TINY_LFU} keeps frequently read entries through bursts of entries
+         * read only once, such as a scroll through a long list.
+         */
+        public Builder memoryPolicy(MemoryPolicy memoryPolicy) {
+            if (memoryPolicy == null) {
+                throw new IllegalArgumentException("memoryPolicy is required");
+            }
+            mMemoryPolicy = memoryPolicy;
+            return this;
+        }
+
+        /**
+         * Warms up the memory cache after a restart. When Corgi is stopped, the keys in the
+         * memory cache are saved. The first time it is started, a low priority background pass
+         * loads their entries from the disk cache back into memory, most recently used first,
+         * until the {@link #warmUpBudget budget} runs out. {@code factory} recreates the request
+         * for each key, which is needed to decode its entry. Off by default.
+         */
+        public Builder warmUp(RequestFactory factory) {
+            if (factory == null) {
+                throw new IllegalArgumentException("factory is required");
+            }
+            mWarmUpFactory = factory;
+            return this;
+        }
+
+        /**
+         * Limits the warm-up pass to {@code timeMillis} milliseconds and {@code bytes} bytes of
+         * memory cache entries, whichever runs out first. Defaults to 2 seconds and half the
+         * memory cache.
+         */
+        public Builder warmUpBudget(long timeMillis, int bytes) {
+            if (timeMillis < 0) {
+                throw new IllegalArgumentException("timeMillis < 0");
+            }
+            if (bytes < 0) {
+                throw new IllegalArgumentException("bytes < 0");
+            }
+            mWarmUpTime  = timeMillis;
+            mWarmUpBytes = bytes;
+            return this;
+        }
+
+        public Corgi build() {
+            return new Corgi(this);
+        }
+    }
+
+    public Corgi(File cacheDir, Listener listener) {
+        this(new Builder(cacheDir, listener));
+    }
+
+    private Corgi(final Builder builder) {
+        mMemoryCache          = createMemoryCache(builder);
+        mDiskCache            = new DeferredDiskCache(new Callable<DiskCache>() {
+            @Override
+            public DiskCache call() {
+                return createDiskCache(builder);
+            }
+        }, builder.mThreadFactory, builder.mMetrics);
+        mThreadFactory        = builder.mThreadFactory;
+        mListener             = builder.mListener;
+        mMetrics              = builder.mMetrics;
+        mRetryPolicy          = builder.mRetryPolicy;
+        mDuplicatePolicy      = builder.mDuplicatePolicy;
+        mCacheDir             = builder.mCacheDir;
+        mAppVersion           = builder.mAppVersion;
+        mWeigher              = builder.mWeigher;
+        mWarmUpFactory        = builder.mWarmUpFactory;
+        mWarmUpTime           = builder.mWarmUpTime;
+        mWarmUpBytes          = (builder.mWarmUpBytes >= 0) ? builder.mWarmUpBytes : mMemoryCache.maxSize() / 2;
+        mDiskCacheDispatchers = new DiskCacheDispatcher[builder.mDiskThreads];
+        mRequestDispatchers   = new RequestDispatcher[builder.mFetchThreads];
+        mHostLimiter          = new HostLimiter(builder.mMaxRequestsPerHost);
+
+        mMetrics.registerGauge("diskCacheQueue", new CorgiMetrics.Gauge() {
+            @Override
+            public int get() {
+                return mDiskCacheQueue.size();
+            }
+        });
+        mMetrics.registerGauge("requestQueue", new CorgiMetrics.Gauge() {
+            @Override
+            public int get() {
+                return mRequestQueue.size();
+            }
+        });
+        mMetrics.registerGauge("responseQueue", new CorgiMetrics.Gauge() {
+            @Override
+            public int get() {
+                return mResponseQueue.size();
+            }
+        });
+        mMetrics.registerGauge("diskWriteQueue", new CorgiMetrics.Gauge() {
+            @Override
+            public int get() {
+                return mDiskWriteQueue.size();
+            }
+        });
+    }
+
+    /**
+     * Creates the memory cache for the builder's policy, keeping {@link #mMemoryKeys} in step
+     * with it.
+     */
+    private MemoryCache<String, Response> createMemoryCache(Builder builder) {
+        int maxSize = builder.mSizeProvider.getMemoryCacheSize();
+        switch (builder.mMemoryPolicy) {
+            case TINY_LFU:
+                return new TinyLfuCache<String, Response>(maxSize, builder.mWeigher) {
+                    @Override
+                    protected void keyAdded(String key) {
+                        mMemoryKeys.add(key);
+                    }
+
+                    @Override
+                    protected void keyRemoved(String key) {
+                        mMemoryKeys.remove(key);
+                    }
+                };
+            default:
+                return new ConcurrentLruCache<String, Response>(maxSize, builder.mWeigher) {
+                    @Override
+                    protected void keyAdded(String key) {
+                        mMemoryKeys.add(key);
+                    }
+
+                    @Override
+                    protected void keyRemoved(String key) {
+                        mMemoryKeys.remove(key);
+                    }
+                };
+        }
+    }
+
+    private static DiskCache createDiskCache(Builder builder) {
+        long maxSize = builder.mSizeProvider.getDiskCacheSize(builder.mCacheDir);
+        switch (builder.mDiskBackend) {
+            case SEGMENTS:
+                return new SegmentDiskCache(builder.mCacheDir, builder.mAppVersion, maxSize, builder.mThreadFactory,
+                    builder.mMetrics);
+            default:
+                return new LruDiskCache(builder.mCacheDir, builder.mAppVersion, maxSize, builder.mThreadFactory,
+                    builder.mMetrics);
+        }
+    }
+
+    public CorgiMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void start() {
+        // Make sure any currently running dispatchers are stopped.
+        quit();
+
+        // Create the disk cache dispatchers. They all share the same disk cache queue.
+        for (int i = 0; i < mDiskCacheDispatchers.length; i++) {
+            mDiskCacheDispatchers[i] = new DiskCacheDispatcher(this, mDiskCacheQueue, mRequestQueue, mDiskCache,
+                mMemoryCache, mDiskWriteQueue, mMetrics);
+            mDiskCacheDispatchers[i].start(mThreadFactory);
+        }
+
+        // Create the request dispatchers. They all share the same request queue.
+        for (int i = 0; i < mRequestDispatchers.length; i++) {
+            mRequestDispatchers[i] = new RequestDispatcher(mRequestQueue, mResponseQueue, mHostLimiter,
+                mWatchdogQueue, mRetryPolicy, mMetrics);
+            mRequestDispatchers[i].start(mThreadFactory);
+        }
+
+        mResponseDispatcher = new ResponseDispatcher(this, mResponseQueue, mMemoryCache, mNegativeCache,
+            mDiskWriteQueue);
+        mResponseDispatcher.start(mThreadFactory);
+
+        mDiskWriteDispatcher = new DiskWriteDispatcher(mDiskWriteQueue, mDiskCache, mMetrics);
+        mDiskWriteDispatcher.start(mThreadFactory);
+
+        mWatchdog = new Watchdog(mWatchdogQueue);
+        mWatchdog.start(mThreadFactory);
+
+        if (mWarmUpFactory != null && !mWarmUpStarted) {
+            mWarmUpStarted = true;
+            mWarmUpThread = mThreadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp();
+                }
+            });
+            mWarmUpThread.setPriority(Thread.MIN_PRIORITY);
+            mWarmUpThread.start();
+        }
+    }
+
+    /**
+     * Stops the dispatchers. If warm-up is on and Corgi was started, also saves the keys in the
+     * memory cache for the next warm-up, on a background thread.
+     */
+    public void stop() {
+        if (mWarmUpFactory != null && mResponseDispatcher != null) {
+            Thread saver = mThreadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    List<String> keys = new ArrayList<String>(mMemoryCache.snapshot().keySet());
+                    Collections.reverse(keys);
+                    HotKeys.write(mCacheDir, mAppVersion, keys);
+                }
+            });
+            saver.setPriority(Thread.MIN_PRIORITY);
+            saver.start();
+        }
+        quit();
+    }
+
+    /**
+     * Stops the warm-up pass and the dispatchers, if running.
+     */
+    private void quit() {
+        if (mWarmUpThread != null) {
+            mWarmUpThread.interrupt();
+            mWarmUpThread = null;
+        }
+
+        for (DiskCacheDispatcher diskCacheDispatcher : mDiskCacheDispatchers) {
+            if (diskCacheDispatcher != null) {
+                diskCacheDispatcher.quit();
+            }
+        }
+        for (RequestDispatcher requestDispatcher : mRequestDispatchers) {
+            if (requestDispatcher != null) {
+                requestDispatcher.quit();
+            }
+        }
+        if (mResponseDispatcher != null) {
+            mResponseDispatcher.quit();
+        }
+        if (mDiskWriteDispatcher != null) {
+            mDiskWriteDispatcher.quit();
+        }
+        if (mWatchdog != null) {
+            mWatchdog.quit();
+        }
+    }
+
+    /**
+     * Fetches {@code request}, from the cache if possible. The response is delivered to the
+     * returned future and to the {@link Listener}. Memory cache hits are delivered before this
+     * method returns. A request can be fetched again once its previous fetch has finished.
+     *
+     * @throws IllegalStateException if an earlier fetch of {@code request} is still
+     *         running, even if it was cancelled.
+     */
+    public <T> RequestFuture<T> fetch(final Request<T> request) {
+        RequestFuture<T> future = prepare(request);
+
+        // If the request is uncacheable, skip the cache queue and queue for fetch.
+        if (!request.shouldCache() || !request.shouldCheckCache()) {
+            mRequestQueue.add(request);
+            return future;
+        }
+
+        // Check memory cache before dispatching to a background thread.
+        Response response = checkMemoryCache(request);
+        if (response != null) {
+            deliver(request, response);
+            return future;
+        }
+
+        // Insert request into stage if there's already a request with the same cache key in flight.
+        synchronized (mWaitingRequests) {
+            if (stage(request)) {
+                mDiskCacheQueue.add(request);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Fetches several requests at once, returning their futures in the same order. The memory
+     * cache is checked for all of them first, then the misses are looked up on disk together.
+     * Misses on disk that share a {@link Request#getBatchKey batch key} are fetched with a single
+     * merged request.
+     *
+     * @throws IllegalStateException if an earlier fetch of any of {@code requests} is still
+     *         running, or a request appears twice. None of the requests are fetched then.
+     */
+    public List<RequestFuture<?>> fetchAll(Collection<? extends Request<?>> requests) {
+        List<RequestFuture<?>> futures = new ArrayList<RequestFuture<?>>(requests.size());
+        try {
+            for (Request<?> request : requests) {
+                futures.add(prepare(request));
+            }
+        } catch (IllegalStateException ex) {
+            // Release the requests claimed so far; none of them were queued.
+            for (RequestFuture<?> future : futures) {
+                future.cancel(false);
+                future.getRequest().endFetch();
+            }
+            throw ex;
+        }
+
+        List<Request> misses = new ArrayList<Request>(requests.size());
+        for (Request<?> request : requests) {
+            if (!request.shouldCache() || !request.shouldCheckCache()) {
+                mRequestQueue.add(request);
+                continue;
+            }
+            Response response = checkMemoryCache(request);
+            if (response != null) {
+                deliver(request, response);
+            } else {
+                misses.add(request);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return futures;
+        }
+
+        List<Request> owners = new ArrayList<Request>(misses.size());
+        synchronized (mWaitingRequests) {
+            for (Request request : misses) {
+                if (stage(request)) {
+                    owners.add(request);
+                }
+            }
+        }
+        if (owners.size() == 1) {
+            mDiskCacheQueue.add(owners.get(0));
+        } else if (!owners.isEmpty()) {
+            mDiskCacheQueue.add(new BatchRequest(owners));
+        }
+        return futures;
+    }
+
+    private <T> RequestFuture<T> prepare(Request<T> request) {
+        RequestFuture<T> future = new RequestFuture<T>(this, request);
+        if (!request.startFetch(future)) {
+            throw new IllegalStateException("Request is already being fetched: " + request);
+        }
+
+        // Process requests in the order they are added, within each priority.
+        request.setSequence(mSequenceGenerator.incrementAndGet());
+        return future;
+    }
+
+    /**
+     * Puts {@code request} on hold if a request with the same cache key is in flight. Otherwise
+     * marks it as the one in flight and returns true; the caller must then queue it for the disk
+     * cache. Must be called with the {@code mWaitingRequests} lock held.
+     */
+    private boolean stage(Request request) {
+        String cacheKey = request.getCacheKey();
+        if (mWaitingRequests.containsKey(cacheKey)) {
+            // There is already a request in flight. Queue up.
+            Queue<Request> stagedRequests = mWaitingRequests.get(cacheKey);
+            if (stagedRequests == null) {
+                stagedRequests = new LinkedList<Request>();
+            }
+            stagedRequests.add(request);
+            mWaitingRequests.put(cacheKey, stagedRequests);
+            mMetrics.increment(CorgiMetrics.Counter.COALESCED);
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, String.format("Request for cacheKey=%s is in flight, putting on hold.", cacheKey));
+            }
+            return false;
+        }
+        // Insert 'null' queue for this cacheKey, indicating there is now a request in flight.
+        mWaitingRequests.put(cacheKey, null);
+        request.setInFlight(true);
+        return true;
+    }
+
+    /**
+     * Takes a cancelled request out of the queues if no dispatcher has picked it up yet. If it was
+     * the request in flight for its cache key, the requests waiting on it go ahead in its place.
+     * Safe to call more than once.
+     */
+    void cancel(Request request) {
+        boolean dequeued = mDiskCacheQueue.remove(request) || mRequestQueue.remove(request)
+            || mHostLimiter.remove(request);
+
+        String cacheKey = request.getCacheKey();
+        if (cacheKey != null) {
+            synchronized (mWaitingRequests) {
+                Queue<Request> waitingRequests = mWaitingRequests.get(cacheKey);
+                if (waitingRequests != null && waitingRequests.remove(request)) {
+                    dequeued = true;
+                } else if (dequeued && request.isInFlight()) {
+                    request.setInFlight(false);
+                    mWaitingRequests.remove(cacheKey);
+                    if (waitingRequests != null) {
+                        mDiskCacheQueue.addAll(waitingRequests);
+                    }
+                }
+            }
+        }
+
+        // Nothing will deliver to a request taken out of the queues, so its fetch ends here.
+        // Otherwise a dispatcher still has it and the fetch ends when it is delivered.
+        if (dequeued) {
+            request.endFetch();
+        }
+    }
+
+    public void removeCache(String cacheKey) {
+        try {
+            mMemoryCache.remove(cacheKey);
+            mNegativeCache.remove(cacheKey);
+            mDiskWriteQueue.remove(cacheKey);
+            mDiskCache.remove(cacheKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Error removing entry from disk cache", e);
+        } finally {
+            mRemovals.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes every entry whose cache key begins with {@code prefix}, from both the memory and the
+     * disk cache. Useful with keys built by {@link CacheKey#with}, e.g. to drop every page of a
+     * feed.
+     */
+    public void removeCacheByPrefix(String prefix) {
+        try {
+            for (String cacheKey : mMemoryKeys.withPrefix(prefix)) {
+                mMemoryCache.remove(cacheKey);
+            }
+            for (String cacheKey : mNegativeCache.snapshot().keySet()) {
+                if (cacheKey.startsWith(prefix)) {
+                    mNegativeCache.remove(cacheKey);
+                }
+            }
+            mDiskWriteQueue.removeByPrefix(prefix);
+            mDiskCache.removeByPrefix(prefix);
+        } catch (IOException e) {
+            throw new RuntimeException("Error removing entries from disk cache", e);
+        } finally {
+            mRemovals.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all entries from the memory and disk caches. Returns immediately; old disk entries
+     * are deleted in the background.
+     */
+    public void clearCache() {
+        mMemoryCache.evictAll();
+        mNegativeCache.evictAll();
+        mDiskWriteQueue.clear();
+        mDiskCache.clear();
+        mRemovals.incrementAndGet();
+    }
+
+    /**
+     * Loads the entries for the keys saved by the last {@link #stop()} from the disk cache into
+     * the memory cache, until the warm-up budget runs out or Corgi is stopped. Only entries that
+     * are still valid and may be kept in memory are loaded.
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        List<String> keys = HotKeys.read(mCacheDir, mAppVersion);
+        int loaded = 0;
+        int bytes = 0;
+        for (String cacheKey : keys) {
+            if (Thread.currentThread().isInterrupted() || bytes >= mWarmUpBytes
+                    || System.currentTimeMillis() - start >= mWarmUpTime) {
+                break;
+            }
+            // Probe without counting a use, so warm-up doesn't skew what gets evicted.
+            if (mMemoryCache.containsKey(cacheKey)) {
+                continue;
+            }
+            Request request = mWarmUpFactory.create(cacheKey);
+            if (request == null || !cacheKey.equals(request.getCacheKey())) {
+                continue;
+            }
+
+            int removals = mRemovals.get();
+            Response response;
+            try {
+                response = mDiskCache.read(request);
+            } catch (Exception ex) {
+                Log.w(TAG, "Failed to warm up " + cacheKey, ex);
+                continue;
+            }
+            if (response == null || !response.isValid() || !response.getCachePolicy().shouldKeepInMemory()) {
+                continue;
+            }
+            // Never replace a response fetched while this one was being read.
+            if (!mMemoryCache.putIfAbsent(cacheKey, response)) {
+                continue;
+            }
+            // Don't bring back an entry removed while it was being read.
+            if (mRemovals.get() != removals) {
+                mMemoryCache.remove(cacheKey, response);
+                continue;
+            }
+            loaded++;
+            bytes += mWeigher.weigh(cacheKey, response);
+            mMetrics.increment(CorgiMetrics.Counter.WARM_UP);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Warmed up " + loaded + " of " + keys.size() + " entries (" + bytes + " bytes) in "
+                + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private Response checkMemoryCache(Request request) {
+        String cacheKey = request.getCacheKey();
+
+        // No lock here: the memory cache is safe for concurrent use, and the conditional removes
+        // below never drop a fresher response put by another thread in the meantime.
+        Response response = mMemoryCache.get(cacheKey);
+        if (response != null) {
+            if (response.isValid()) {
+                if (!response.getCachePolicy().shouldKeepInMemory()) {
+                    mMemoryCache.remove(cacheKey, response);
+                }
+                mMetrics.increment(CorgiMetrics.Counter.MEMORY_HIT);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "MEM HIT:   " + cacheKey);
+                }
+                return response;
+            } else if (response.isStaleUsable()) {
+                mMetrics.increment(CorgiMetrics.Counter.STALE_HIT);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "MEM STALE: " + cacheKey);
+                }
+                revalidate(request, response);
+                return response;
+            } else {
+                mMetrics.increment(CorgiMetrics.Counter.MEMORY_EXPIRED);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "MEM INVAL  " +  cacheKey);
+                }
+                // Keep it if it can be revalidated, so it doesn't have to be read back from disk.
+                if (response.getValidators() == null) {
+                    mMemoryCache.remove(cacheKey, response);
+                }
+            }
+        } else {
+            mMetrics.increment(CorgiMetrics.Counter.MEMORY_MISS);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "MEM MISS:   " + cacheKey);
+            }
+        }
+        return checkNegativeCache(cacheKey);
+    }
+
+    /**
+     * Returns a failed response for {@code cacheKey} that is still within its error max age, or
+     * null.
+     */
+    private Response checkNegativeCache(String cacheKey) {
+        Response response = mNegativeCache.get(cacheKey);
+        if (response == null) {
+            return null;
+        }
+        if (!response.isValid()) {
+            mNegativeCache.remove(cacheKey, response);
+            return null;
+        }
+        mMetrics.increment(CorgiMetrics.Counter.NEGATIVE_HIT);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "NEG HIT:   " + cacheKey);
+        }
+        return response;
+    }
+
+    /**
+     * Refreshes a stale response in the background, unless a request for the same cache key is
+     * already in flight. The refreshed response updates the caches but is not delivered.
+     */
+    <T> void revalidate(Request<T> request, Response<T> stale) {
+        String cacheKey = request.getCacheKey();
+        synchronized (mWaitingRequests) {
+            if (mWaitingRequests.containsKey(cacheKey)) {
+                return;
+            }
+            mWaitingRequests.put(cacheKey, null);
+        }
+        Request<T> refresh = new RevalidateRequest<T>(request);
+        if (stale.getValidators() != null) {
+            refresh.setExpiredResponse(stale);
+        }
+        refresh.setSequence(mSequenceGenerator.incrementAndGet());
+        mRequestQueue.add(refresh);
+    }
+
+    /**
+     * Completes the request in flight for its cache key, and hands its response straight to the
+     * duplicates waiting on it.
+     */
+    void finish(Request request, Response response) {
+        request.setExpiredResponse(null);
+
+        String cacheKey = request.getCacheKey();
+        Queue<Request> waitingRequests = null;
+        if (cacheKey != null) {
+            synchronized (mWaitingRequests) {
+                request.setInFlight(false);
+                waitingRequests = mWaitingRequests.remove(cacheKey);
+                // A cancelled request's failure is not an answer for the others, and neither is a
+                // failed background refresh, which nobody asked for.
+                if (waitingRequests != null && !waitingRequests.isEmpty() && !response.success()
+                        && (mDuplicatePolicy == DuplicatePolicy.RETRY || request.isCanceled()
+                            || request instanceof RevalidateRequest)) {
+                    retryWaiting(cacheKey, waitingRequests);
+                    waitingRequests = null;
+                }
+            }
+        }
+
+        // Background refreshes only update the caches.
+        if (!(request instanceof RevalidateRequest)) {
+            deliver(request, response);
+        }
+
+        if (waitingRequests != null) {
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, String.format("Delivering to %d waiting requests for cacheKey=%s.",
+                    waitingRequests.size(), cacheKey));
+            }
+            for (Request waitingRequest : waitingRequests) {
+                deliver(waitingRequest, response);
+            }
+        }
+    }
+
+    /**
+     * Sends the first of {@code waitingRequests} to the network in place of a request that failed,
+     * with the rest still waiting on it. Must be called with the {@code mWaitingRequests} lock
+     * held.
+     */
+    private void retryWaiting(String cacheKey, Queue<Request> waitingRequests) {
+        Request next = waitingRequests.remove();
+        mWaitingRequests.put(cacheKey, waitingRequests.isEmpty() ? null : waitingRequests);
+        next.setInFlight(true);
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, String.format("Retrying failed cacheKey=%s for %d waiting requests.",
+                cacheKey, waitingRequests.size() + 1));
+        }
+        mRequestQueue.add(next);
+    }
+
+    /**
+     * Ends the request's fetch and hands {@code response} to its future and the listener, unless
+     * the future was already cancelled or completed.
+     */
+    @SuppressWarnings("unchecked")
+    private void deliver(Request request, Response response) {
+        RequestFuture future = request.getFuture();
+        // Before completing, so a listener on the future can fetch the request again.
+        request.endFetch();
+        // Only the call that completes the future notifies the listener. It returns false if the
+        // request was cancelled or this response already got here another way.
+        if (future != null && !future.complete(response)) {
+            return;
+        }
+        if (mListener != null) {
+            mListener.onResponse(response);
+        }
+    }
+}
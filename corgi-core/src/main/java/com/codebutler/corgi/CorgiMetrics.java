@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, queue depths and latency histograms for a {@link Corgi} instance.
+ *
+ * <p>Metrics are off by default ({@link #DISABLED}), in which case every recording method returns
+ * right away and no clock is read. To turn them on, pass an instance to
+ * {@link Corgi.Builder#metrics}, then call {@link #export()} whenever a {@link Snapshot} should be
+ * handed to the {@link Exporter}.
+ *
+ * <p>Counters are striped across padded cells so that concurrent memory hits on different threads
+ * don't fight over one cache line.
+ */
+public class CorgiMetrics {
+    public static final CorgiMetrics DISABLED = new CorgiMetrics();
+
+    public enum Counter {
+        MEMORY_HIT,
+        MEMORY_MISS,
+        MEMORY_EXPIRED,
+        DISK_HIT,
+        DISK_MISS,
+        DISK_EXPIRED,
+        /** Expired responses delivered within their stale-while-revalidate window. */
+        STALE_HIT,
+        /** Requests answered with a remembered failure, see {@link CachePolicy#getErrorMaxAge()}. */
+        NEGATIVE_HIT,
+        /** Requests that waited for a duplicate already in flight instead of being dispatched. */
+        COALESCED,
+        /** Fetches that missed their {@link RetryPolicy#getTimeout() deadline}. */
+        TIMEOUT,
+        /** Failed fetches scheduled to be tried again. */
+        RETRY,
+        /** Expired responses the server confirmed were still current. */
+        NOT_MODIFIED,
+        /** Entries loaded into the memory cache by the warm-up pass, see {@link Corgi.Builder#warmUp}. */
+        WARM_UP
+    }
+
+    public enum Timer {
+        /** From handing a request to {@link Request#fetch} until its callback completes. */
+        FETCH,
+        /** Reading one entry from the disk cache, including deserialization. */
+        DISK_READ,
+        /** Writing one entry to the disk cache. */
+        DISK_WRITE,
+        /** {@link Request#readResponse} alone. */
+        DESERIALIZE,
+        /** Opening the disk cache, in the background, when Corgi is created. */
+        DISK_OPEN
+    }
+
+    /**
+     * Receives snapshots from {@link #export()}.
+     */
+    public interface Exporter {
+        void export(Snapshot snapshot);
+    }
+
+    /**
+     * A value sampled when a snapshot is taken, such as a queue depth.
+     */
+    public interface Gauge {
+        int get();
+    }
+
+    /** Longs per cell: keeps stripes on separate 64-byte cache lines. */
+    private static final int CELL_PADDING = 8;
+    private static final int MAX_STRIPES = 16;
+
+    private final boolean mEnabled;
+    private final Exporter mExporter;
+    private final int mStripeMask;
+    private final AtomicLongArray[] mCounters;
+    private final Histogram[] mTimers;
+    private final Map<String, Gauge> mGauges = new LinkedHashMap<String, Gauge>();
+
+    private CorgiMetrics() {
+        mEnabled    = false;
+        mExporter   = null;
+        mStripeMask = 0;
+        mCounters   = null;
+        mTimers     = null;
+    }
+
+    public CorgiMetrics(Exporter exporter) {
+        if (exporter == null) {
+            throw new IllegalArgumentException("exporter is required");
+        }
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        mEnabled    = true;
+        mExporter   = exporter;
+        mStripeMask = stripes - 1;
+        mCounters   = new AtomicLongArray[Counter.values().length];
+        for (int i = 0; i < mCounters.length; i++) {
+            mCounters[i] = new AtomicLongArray(stripes * CELL_PADDING);
+        }
+        mTimers = new Histogram[Timer.values().length];
+        for (int i = 0; i < mTimers.length; i++) {
+            mTimers[i] = new Histogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void increment(Counter counter) {
+        if (!mEnabled) {
+            return;
+        }
+        int stripe = (int) Thread.currentThread().getId() & mStripeMask;
+        mCounters[counter.ordinal()].incrementAndGet(stripe * CELL_PADDING);
+    }
+
+    /**
+     * Returns a start time for {@link #stopTimer}, or 0 without reading the clock if metrics are
+     * disabled.
+     */
+    public long startTimer() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, as returned by {@link #startTimer}.
+     */
+    public void stopTimer(Timer timer, long startNanos) {
+        if (!mEnabled) {
+            return;
+        }
+        mTimers[timer.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Registers a value to be sampled into each snapshot, such as the depth of a queue.
+     */
+    public void registerGauge(String name, Gauge gauge) {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (mGauges) {
+            mGauges.put(name, gauge);
+        }
+    }
+
+    /**
+     * Takes a snapshot and hands it to the exporter. Does nothing if metrics are disabled.
+     */
+    public void export() {
+        if (!mEnabled) {
+            return;
+        }
+        mExporter.export(snapshot());
+    }
+
+    /**
+     * Returns the current values of all metrics. Returns an empty snapshot if metrics are
+     * disabled.
+     */
+    public Snapshot snapshot() {
+        Map<Counter, Long> counters = new EnumMap<Counter, Long>(Counter.class);
+        Map<Timer, TimerSnapshot> timers = new EnumMap<Timer, TimerSnapshot>(Timer.class);
+        Map<String, Integer> gauges = new LinkedHashMap<String, Integer>();
+        if (mEnabled) {
+            for (Counter counter : Counter.values()) {
+                AtomicLongArray cells = mCounters[counter.ordinal()];
+                long total = 0;
+                for (int i = 0; i < cells.length(); i += CELL_PADDING) {
+                    total += cells.get(i);
+                }
+                counters.put(counter, total);
+            }
+            for (Timer timer : Timer.values()) {
+                timers.put(timer, mTimers[timer.ordinal()].snapshot());
+            }
+            synchronized (mGauges) {
+                for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+                    gauges.put(entry.getKey(), entry.getValue().get());
+                }
+            }
+        }
+        return new Snapshot(counters, timers, gauges);
+    }
+
+    public static class Snapshot {
+        private final Map<Counter, Long> mCounters;
+        private final Map<Timer, TimerSnapshot> mTimers;
+        private final Map<String, Integer> mGauges;
+
+        Snapshot(Map<Counter, Long> counters, Map<Timer, TimerSnapshot> timers, Map<String, Integer> gauges) {
+            mCounters = Collections.unmodifiableMap(counters);
+            mTimers   = Collections.unmodifiableMap(timers);
+            mGauges   = Collections.unmodifiableMap(gauges);
+        }
+
+        public long getCount(Counter counter) {
+            Long count = mCounters.get(counter);
+            return (count != null) ? count : 0;
+        }
+
+        /**
+         * Returns the latency histogram for {@code timer}, or null if metrics are disabled.
+         */
+        public TimerSnapshot getTimer(Timer timer) {
+            return mTimers.get(timer);
+        }
+
+        /**
+         * Returns the sampled gauges, such as queue depths, by name.
+         */
+        public Map<String, Integer> getGauges() {
+            return mGauges;
+        }
+
+        @Override
+        public String toString() {
+            return "CorgiMetrics.Snapshot{counters=" + mCounters + ", timers=" + mTimers + ", gauges=" + mGauges + "}";
+        }
+    }
+
+    /**
+     * Latency histogram with power-of-two buckets: bucket {@code i} holds durations below
+     * 2<sup>i</sup> nanoseconds. Percentiles are reported as the upper bound of their bucket.
+     */
+    public static class TimerSnapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mTotalNanos;
+
+        TimerSnapshot(long[] buckets, long count, long totalNanos) {
+            mBuckets    = buckets;
+            mCount      = count;
+            mTotalNanos = totalNanos;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanNanos() {
+            return (mCount > 0) ? mTotalNanos / mCount : 0;
+        }
+
+        /**
+         * Returns an upper bound, in nanoseconds, of the given percentile (between 0 and 100).
+         */
+        public long getPercentileNanos(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(mCount * (percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return (i >= 63) ? Long.MAX_VALUE : (1L << i);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d,mean=%dns,p50=%dns,p99=%dns}",
+                mCount, getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99));
+        }
+    }
+
+    private static class Histogram {
+        private final AtomicLongArray mBuckets = new AtomicLongArray(64);
+        private final AtomicLongArray mTotal = new AtomicLongArray(1);
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            mBuckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(nanos)));
+            mTotal.addAndGet(0, nanos);
+        }
+
+        TimerSnapshot snapshot() {
+            // Count from the buckets themselves so percentiles stay consistent with them.
+            long[] buckets = new long[mBuckets.length()];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+            return new TimerSnapshot(buckets, count, mTotal.get(0));
+        }
+    }
+}
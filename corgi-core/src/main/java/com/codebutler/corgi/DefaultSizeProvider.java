@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.File;
+
+/**
+ * Sizes the memory cache from the maximum heap size and the disk cache from the size of the
+ * volume it's on.
+ */
+public class DefaultSizeProvider implements SizeProvider {
+    private static final int MIN_DISK_CACHE_SIZE = 5 * 1024 * 1024; // 5MB
+    private static final int MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
+    private static final int MAX_MEM_CACHE_SIZE = 20 * 1024 * 1024; // 20MB
+
+    @Override
+    public int getMemoryCacheSize() {
+        // Target 15% of the heap.
+        long size = Runtime.getRuntime().maxMemory() / 7;
+        // Bound to max size for mem cache.
+        return (int) Math.min(size, MAX_MEM_CACHE_SIZE);
+    }
+
+    @Override
+    public long getDiskCacheSize(File directory) {
+        // Target 2% of the total space.
+        long size = directory.getTotalSpace() / 50;
+        // Bound inside min/max size for disk cache.
+        return Math.max(Math.min(size, MAX_DISK_CACHE_SIZE), MIN_DISK_CACHE_SIZE);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codebutler.corgi;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link DiskCache} that opens the real one on a background thread, so creating a Corgi doesn't
+ * wait for the disk. Calls made before it is open wait for it: memory hits never get here, and
+ * disk lookups wait in the disk cache queue. If it fails to open, it behaves as an empty cache.
+ */
+class DeferredDiskCache implements DiskCache {
+    private static final String TAG = "CorgiDeferredDiskCache";
+
+    private final CountDownLatch mOpened = new CountDownLatch(1);
+
+    /** The opened cache, or null if it isn't open yet or failed to open. */
+    private volatile DiskCache mDiskCache;
+
+    /** Whether clear() was called before the cache was open. Guarded by this. */
+    private boolean mClearPending;
+
+    /**
+     * Number of clear() calls, so a put that waited for the cache to open can tell that the cache
+     * was cleared in the meantime. Guarded by this.
+     */
+    private int mClearCount;
+
+    /**
+     * @param opener Opens the real cache
+     * @param threadFactory Creates the thread that opens it
+     * @param metrics Metrics to record the time to open to
+     */
+    DeferredDiskCache(final Callable<DiskCache> opener, ThreadFactory threadFactory, final CorgiMetrics metrics) {
+        threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                open(opener, metrics);
+            }
+        }).start();
+    }
+
+    private void open(Callable<DiskCache> opener, CorgiMetrics metrics) {
+        long start = System.currentTimeMillis();
+        long timerStart = metrics.startTimer();
+        try {
+            DiskCache diskCache = opener.call();
+            boolean clear;
+            synchronized (this) {
+                mDiskCache = diskCache;
+                clear = mClearPending;
+            }
+            if (clear) {
+                diskCache.clear();
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Opened disk cache in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, "Failed to open disk cache, continuing without it", ex);
+        } finally {
+            metrics.stopTimer(CorgiMetrics.Timer.DISK_OPEN, timerStart);
+            mOpened.countDown();
+        }
+    }
+
+    /**
+     * Waits for the cache to open. Returns null if it failed to, or if the thread is interrupted
+     * while waiting.
+     */
+    private DiskCache await() {
+        try {
+            mOpened.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return mDiskCache;
+    }
+
+    @Override
+    public Response read(Request request) throws Exception {
+        DiskCache diskCache = await();
+        return (diskCache != null) ? diskCache.read(request) : null;
+    }
+
+    @Override
+    public Response[] readAll(List<Request> requests) {
+        DiskCache diskCache = await();
+        return (diskCache != null) ? diskCache.readAll(requests) : new Response[requests.size()];
+    }
+
+    /**
+     * Writes {@code response} for {@code key} once the cache is open. Dropped if the cache is
+     * cleared while waiting, since the put came first.
+     */
+    @Override
+    public void put(String key, Response response) throws Exception {
+        int clearCount;
+        synchronized (this) {
+            clearCount = mClearCount;
+        }
+        DiskCache diskCache = await();
+        if (diskCache == null) {
+            return;
+        }
+        synchronized (this) {
+            if (mClearCount != clearCount) {
+                return;
+            }
+        }
+        diskCache.put(key, response);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        DiskCache diskCache = await();
+        if (diskCache != null) {
+            diskCache.flush();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws IOException {
+        DiskCache diskCache = await();
+        return (diskCache != null) && diskCache.remove(key);
+    }
+
+    @Override
+    public int removeByPrefix(String prefix) throws IOException {
+        DiskCache diskCache = await();
+        return (diskCache != null) ? diskCache.removeByPrefix(prefix) : 0;
+    }
+
+    /**
+     * Removes all entries. If the cache isn't open yet, they are removed once it is, without
+     * waiting.
+     */
+    @Override
+    public void clear() {
+        synchronized (this) {
+            mClearCount++;
+            if (mDiskCache == null && mOpened.getCount() > 0) {
+                mClearPending = true;
+                return;
+            }
+        }
+        DiskCache diskCache = await();
+        if (diskCache != null) {
+            diskCache.clear();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The disk tier. Responses are stored by cache key and read back with the request's codec.
+ *
+ * <p>Implementations must be safe for concurrent use by the disk cache and disk write dispatchers.
+ * Each stores, next to the payload, the response's date and {@link Validators}, so a revalidated
+ * response can be stored again without rewriting its payload.
+ */
+public interface DiskCache {
+    /**
+     * Reads the cached response for {@code request}, or returns null if there is none.
+     */
+    Response read(Request request) throws Exception;
+
+    /**
+     * Reads the cached responses for {@code requests}, in the same order. Entries that are missing
+     * come back as null. Entries that can't be read are removed and also come back as null.
+     */
+    Response[] readAll(List<Request> requests);
+
+    /**
+     * Writes {@code response} for {@code key}. If the payload of {@code response} is already on
+     * disk, only its date and validators need to be written.
+     */
+    void put(String key, Response response) throws Exception;
+
+    /**
+     * Makes writes so far durable, as far as the implementation guarantees.
+     */
+    void flush() throws IOException;
+
+    boolean remove(String key) throws IOException;
+
+    /**
+     * Removes all entries whose key begins with {@code prefix}.
+     *
+     * @return the number of entries removed.
+     */
+    int removeByPrefix(String prefix) throws IOException;
+
+    /**
+     * Removes all entries. Returns immediately; the space may be reclaimed in the background.
+     */
+    void clear();
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Based on code from Volley
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+public class DiskCacheDispatcher extends Dispatcher {
+    private static final String TAG = "CorgiCacheDispatcher";
+
+    /** The queue of request coming in for triage. */
+    private final BlockingQueue<Request> mCacheQueue;
+
+    /** The queue of request going out to the network. */
+    private final BlockingQueue<Request> mRequestQueue;
+
+    /** The disk cache to read from. */
+    private final DiskCache mCache;
+
+    /** The memory cache, checked first for responses that are still being written to disk. */
+    private final MemoryCache<String, Response> mMemoryCache;
+
+    /** Responses waiting to be written to the disk cache. */
+    private final DiskWriteQueue mDiskWriteQueue;
+
+    /** Records hits, misses and read latency. */
+    private final CorgiMetrics mMetrics;
+
+    /** For posting responses. */
+    private final Corgi mCorgi;
+
+    /**
+     * Creates a new cache triage dispatcher thread.  You must call {@link #start}
+     * in order to begin processing.
+     *
+     * @param cacheQueue Queue of incoming requests for triage
+     * @param requestQueue Queue to post requests that require network to
+     * @param cache Cache to use for resolution
+     * @param memoryCache Memory cache holding responses not yet written to disk
+     * @param diskWriteQueue Queue of responses not yet written to disk
+     * @param metrics Metrics to record to
+     */
+    public DiskCacheDispatcher(Corgi corgi, BlockingQueue<Request> cacheQueue, BlockingQueue<Request> requestQueue, DiskCache cache,
+            MemoryCache<String, Response> memoryCache, DiskWriteQueue diskWriteQueue, CorgiMetrics metrics) {
+        mCorgi = corgi;
+        mCacheQueue = cacheQueue;
+        mRequestQueue = requestQueue;
+        mCache = cache;
+        mMemoryCache = memoryCache;
+        mDiskWriteQueue = diskWriteQueue;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Request request = mCacheQueue.take();
+
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Got request: " + request);
+                }
+
+                if (request instanceof BatchRequest) {
+                    processBatch((BatchRequest) request);
+                } else if (triage(request, readFromCache(request))) {
+                    sendToNetwork(request);
+                }
+
+            } catch (InterruptedException ignored) {
+                // We may have been interrupted because it was time to quit.
+                if (isQuitting()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers {@code response}, read from the cache for {@code request}, if it can be used.
+     * Returns true if the request has to go to the network instead.
+     */
+    private boolean triage(Request request, Response response) {
+        if (response == null) {
+            mMetrics.increment(CorgiMetrics.Counter.DISK_MISS);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Not found in cache: " + request);
+            }
+            return true;
+        }
+
+        // If it is expired but may still be served, deliver it and refresh it in the
+        // background.
+        if (response.isStaleUsable()) {
+            mMetrics.increment(CorgiMetrics.Counter.STALE_HIT);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Serving stale response: " + request);
+            }
+            mCorgi.finish(request, response);
+            mCorgi.revalidate(request, response);
+            return false;
+        }
+
+        // If it is completely expired, send it to the network. Pass the expired response along
+        // if the server can tell us it is still current.
+        if (!response.isValid()) {
+            mMetrics.increment(CorgiMetrics.Counter.DISK_EXPIRED);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Response is invalid: " + request);
+            }
+            if (response.getValidators() != null) {
+                request.setExpiredResponse(response);
+            }
+            return true;
+        }
+
+        mMetrics.increment(CorgiMetrics.Counter.DISK_HIT);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Cache hit! " + request);
+        }
+
+        // We have a cache hit.
+        mCorgi.finish(request, response);
+        return false;
+    }
+
+    /**
+     * Reads a batch of requests from {@link Corgi#fetchAll} in one pass over the disk cache, then
+     * sends the misses to the network, merging those that can be batched.
+     */
+    private void processBatch(BatchRequest batch) throws InterruptedException {
+        List<Request> requests = batch.getRequests();
+        Response[] responses = new Response[requests.size()];
+
+        // Responses that were just fetched may not have reached the disk yet.
+        List<Request> diskRequests = new ArrayList<Request>(requests.size());
+        List<Integer> diskIndexes = new ArrayList<Integer>(requests.size());
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = readPending(requests.get(i).getCacheKey());
+            if (responses[i] == null) {
+                diskRequests.add(requests.get(i));
+                diskIndexes.add(i);
+            }
+        }
+        if (!diskRequests.isEmpty()) {
+            Response[] diskResponses = mCache.readAll(diskRequests);
+            for (int i = 0; i < diskResponses.length; i++) {
+                responses[diskIndexes.get(i)] = diskResponses[i];
+            }
+        }
+
+        List<Request> misses = new ArrayList<Request>();
+        for (int i = 0; i < responses.length; i++) {
+            if (triage(requests.get(i), responses[i])) {
+                misses.add(requests.get(i));
+            }
+        }
+
+        // Merge misses sharing a batch key into one request each.
+        Map<String, List<Request>> groups = new LinkedHashMap<String, List<Request>>();
+        for (Request request : misses) {
+            String batchKey = request.isCanceled() ? null : request.getBatchKey();
+            if (batchKey == null) {
+                sendToNetwork(request);
+                continue;
+            }
+            List<Request> group = groups.get(batchKey);
+            if (group == null) {
+                group = new ArrayList<Request>();
+                groups.put(batchKey, group);
+            }
+            group.add(request);
+        }
+        for (List<Request> group : groups.values()) {
+            if (group.size() == 1) {
+                sendToNetwork(group.get(0));
+                continue;
+            }
+            Request upstream;
+            try {
+                upstream = group.get(0).createBatch(group);
+            } catch (RuntimeException ex) {
+                // A bug in the request; don't let it take this thread down with the whole group.
+                Log.e(TAG, "createBatch() failed for " + group.size() + " requests, fetching them one by one", ex);
+                upstream = null;
+            }
+            if (upstream == null) {
+                for (Request request : group) {
+                    sendToNetwork(request);
+                }
+                continue;
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Merged " + group.size() + " requests into " + upstream);
+            }
+            sendBatchToNetwork(new BatchRequest(upstream, group), group);
+        }
+    }
+
+    /**
+     * Queues {@code merged}, the merged request for {@code group}. If every request in the group
+     * was cancelled while we had it, takes the merged request back out and cancels them one by
+     * one instead.
+     */
+    private void sendBatchToNetwork(BatchRequest merged, List<Request> group) throws InterruptedException {
+        mRequestQueue.put(merged);
+        for (Request request : group) {
+            if (!request.isCanceled()) {
+                return;
+            }
+        }
+        if (mRequestQueue.remove(merged)) {
+            for (Request request : group) {
+                sendToNetwork(request);
+            }
+        }
+    }
+
+    private void sendToNetwork(Request request) throws InterruptedException {
+        mRequestQueue.put(request);
+        // If the request was cancelled while we had it, cancelling couldn't take it out of the
+        // queues. Try again now that it is back in one.
+        if (request.isCanceled()) {
+            mCorgi.cancel(request);
+        }
+    }
+
+    /**
+     * Returns a response that was just fetched and may not have reached the disk yet, or null.
+     * Peeks at the memory cache, since finding it there isn't a use of the entry.
+     */
+    private Response readPending(String cacheKey) {
+        Response response = mMemoryCache.peek(cacheKey);
+        if (response != null) {
+            return response;
+        }
+        return mDiskWriteQueue.peek(cacheKey);
+    }
+
+    private Response readFromCache(Request request) {
+        String cacheKey = request.getCacheKey();
+
+        // A response that was just fetched may not have reached the disk yet.
+        Response response = readPending(cacheKey);
+        if (response != null) {
+            return response;
+        }
+
+        try {
+            return mCache.read(request);
+        } catch (Exception ex) {
+            try {
+                mCache.remove(cacheKey);
+            } catch (IOException ignored) {}
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes responses to the disk cache behind the response dispatcher, in batches.
+ */
+public class DiskWriteDispatcher extends Dispatcher {
+    private static final String TAG = "CorgiDiskWriter";
+
+    /** Maximum number of writes taken from the queue at once. */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /** The queue of responses waiting to be written. */
+    private final DiskWriteQueue mQueue;
+
+    /** The disk cache to write to. */
+    private final DiskCache mCache;
+
+    /** Records write latency. */
+    private final CorgiMetrics mMetrics;
+
+    /**
+     * Creates a new disk writer thread. You must call {@link #start} in order to begin
+     * processing.
+     *
+     * @param queue Queue of responses waiting to be written
+     * @param cache Cache to write to
+     * @param metrics Metrics to record to
+     */
+    public DiskWriteDispatcher(DiskWriteQueue queue, DiskCache cache, CorgiMetrics metrics) {
+        mQueue = queue;
+        mCache = cache;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Map<String, Response> batch = mQueue.takeBatch(MAX_BATCH_SIZE);
+
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Writing " + batch.size() + " responses");
+                }
+
+                for (Map.Entry<String, Response> entry : batch.entrySet()) {
+                    write(entry.getKey(), entry.getValue());
+                }
+
+                try {
+                    mCache.flush();
+                } catch (IOException ex) {
+                    Log.e(TAG, "Failed to flush disk cache", ex);
+                }
+
+            } catch (InterruptedException ignored) {
+                // We may have been interrupted because it was time to quit.
+                if (isQuitting()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void write(String cacheKey, Response response) {
+        long start = mMetrics.startTimer();
+        try {
+            mCache.put(cacheKey, response);
+        } catch (Exception ex) {
+            Log.e(TAG, "Failed to write " + cacheKey + " to disk cache", ex);
+        } finally {
+            mMetrics.stopTimer(CorgiMetrics.Timer.DISK_WRITE, start);
+        }
+
+        // The entry was removed from the cache while we were writing it. Don't resurrect it.
+        if (!mQueue.complete(cacheKey, response)) {
+            try {
+                mCache.remove(cacheKey);
+            } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded queue of responses waiting to be written to the disk cache.
+ *
+ * <ul>
+ *     <li>Queuing a response for a key that is already pending replaces the pending response, so
+ *          only the latest one is written.</li>
+ *     <li>{@link #put} blocks while the queue is full, slowing producers down to the speed of the
+ *          disk.</li>
+ *     <li>Responses stay visible through {@link #peek} until they have been committed, so readers
+ *          never see a gap between the queue and the disk.</li>
+ * </ul>
+ */
+public class DiskWriteQueue {
+    /** Maximum number of pending writes. */
+    private final int mCapacity;
+
+    /** Writes not yet taken by the writer, in the order they were first queued. */
+    private final LinkedHashMap<String, Response> mPending = new LinkedHashMap<String, Response>();
+
+    /** Writes taken by the writer and not yet completed. */
+    private final Map<String, Response> mWriting = new HashMap<String, Response>();
+
+    public DiskWriteQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Queues {@code response} to be written for {@code cacheKey}, replacing any write already
+     * pending for that key. Blocks while the queue is full.
+     */
+    public synchronized void put(String cacheKey, Response response) throws InterruptedException {
+        if (!mPending.containsKey(cacheKey)) {
+            while (mPending.size() >= mCapacity) {
+                wait();
+            }
+        }
+        mPending.put(cacheKey, response);
+        notifyAll();
+    }
+
+    /**
+     * Removes and returns up to {@code maxCount} pending writes, blocking until at least one is
+     * available. Each returned write must be passed to {@link #complete} once it is done.
+     */
+    public synchronized Map<String, Response> takeBatch(int maxCount) throws InterruptedException {
+        while (mPending.isEmpty()) {
+            wait();
+        }
+        Map<String, Response> batch = new LinkedHashMap<String, Response>();
+        Iterator<Map.Entry<String, Response>> iterator = mPending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < maxCount) {
+            Map.Entry<String, Response> entry = iterator.next();
+            batch.put(entry.getKey(), entry.getValue());
+            mWriting.put(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        notifyAll();
+        return batch;
+    }
+
+    /**
+     * Marks a write returned by {@link #takeBatch} as done.
+     *
+     * @return false if the key was removed while it was being written, in which case the caller
+     *     should remove it from the disk cache again.
+     */
+    public synchronized boolean complete(String cacheKey, Response response) {
+        if (mWriting.get(cacheKey) != response) {
+            return false;
+        }
+        mWriting.remove(cacheKey);
+        return true;
+    }
+
+    /**
+     * Returns the response waiting to be written for {@code cacheKey}, or null.
+     */
+    public synchronized Response peek(String cacheKey) {
+        Response response = mPending.get(cacheKey);
+        if (response == null) {
+            response = mWriting.get(cacheKey);
+        }
+        return response;
+    }
+
+    /**
+     * Drops any write waiting for {@code cacheKey}.
+     */
+    public synchronized void remove(String cacheKey) {
+        mPending.remove(cacheKey);
+        mWriting.remove(cacheKey);
+        notifyAll();
+    }
+
+    /**
+     * Drops any write waiting for a key beginning with {@code prefix}.
+     */
+    public synchronized void removeByPrefix(String prefix) {
+        removeByPrefix(mPending, prefix);
+        removeByPrefix(mWriting, prefix);
+        notifyAll();
+    }
+
+    private static void removeByPrefix(Map<String, Response> writes, String prefix) {
+        Iterator<String> iterator = writes.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all waiting writes.
+     */
+    public synchronized void clear() {
+        mPending.clear();
+        mWriting.clear();
+        notifyAll();
+    }
+
+    public synchronized int size() {
+        return mPending.size();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A worker loop run on its own thread until {@link #quit()} is called.
+ */
+abstract class Dispatcher implements Runnable {
+    /** Used for telling us to die. */
+    private volatile boolean mQuit = false;
+
+    private volatile Thread mThread;
+
+    /**
+     * Starts processing on a new thread from {@code threadFactory}.
+     */
+    public void start(ThreadFactory threadFactory) {
+        Thread thread = threadFactory.newThread(this);
+        mThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Forces this dispatcher to quit immediately.  If any requests are still in
+     * the queue, they are not guaranteed to be processed.
+     */
+    public void quit() {
+        mQuit = true;
+        Thread thread = mThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns true once {@link #quit()} has been called. Checked after the thread is interrupted.
+     */
+    protected boolean isQuitting() {
+        return mQuit;
+    }
+}
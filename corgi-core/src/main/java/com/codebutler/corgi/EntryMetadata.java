@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+/**
+ * Reads and writes the part of a disk cache entry kept apart from the payload: the response's date
+ * and {@link Validators}. Shared by the {@link DiskCache} implementations.
+ */
+final class EntryMetadata {
+    private static final int VERSION = 1;
+
+    /** Metadata is tiny; don't allocate the default 8K buffers for it. */
+    private static final int BUFFER_SIZE = 256;
+
+    private EntryMetadata() {}
+
+    /**
+     * Writes the metadata of {@code response} and closes {@code stream}.
+     */
+    static void write(OutputStream stream, Response response) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        try {
+            output.writeByte(VERSION);
+            output.writeLong(response.getDate().getTime());
+            Validators validators = response.getValidators();
+            output.writeBoolean(validators != null);
+            if (validators != null) {
+                writeNullableString(output, validators.getETag());
+                output.writeLong(validators.getLastModified());
+                writeNullableString(output, validators.getVersion());
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads metadata written by {@link #write} into {@code response}. Does not close
+     * {@code stream}.
+     */
+    static void read(InputStream stream, Response response) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown metadata version " + version);
+        }
+        Date date = new Date(input.readLong());
+        Validators validators = null;
+        if (input.readBoolean()) {
+            String eTag = readNullableString(input);
+            long lastModified = input.readLong();
+            validators = new Validators(eTag, lastModified, readNullableString(input));
+        }
+        response.refresh(date, validators);
+    }
+
+    private static void writeNullableString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
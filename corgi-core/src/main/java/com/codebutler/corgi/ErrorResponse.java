@@ -16,25 +16,20 @@
 
 package com.codebutler.corgi;
 
-import com.google.gson.Gson;
-
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-
-public abstract class GsonResponse<T> extends Response<T> {
-    protected GsonResponse(T object) {
-        super(object);
-    }
+/**
+ * A failed response created by Corgi itself, e.g. when a fetch times out. Carries the request's
+ * {@link Request#getCachePolicy() policy}, so the failure is remembered for its error max age.
+ */
+class ErrorResponse<T> extends Response<T> {
+    private final CachePolicy mCachePolicy;
 
-    protected GsonResponse(Exception error) {
+    ErrorResponse(Exception error, CachePolicy cachePolicy) {
         super(error);
+        mCachePolicy = (cachePolicy != null) ? cachePolicy : CachePolicy.NO_CACHE;
     }
 
     @Override
-    public final void write(OutputStream stream) throws IOException {
-        OutputStreamWriter writer = new OutputStreamWriter(stream);
-        new Gson().toJson(this, writer);
-        writer.flush();
+    public CachePolicy getCachePolicy() {
+        return mCachePolicy;
     }
 }
@@ -16,7 +16,15 @@
 
 package com.codebutler.corgi;
 
-public interface RequestCallback<T> {
-    public void onExtraResponse(String cacheKey, Response response);
-    public void onComplete(Response<T> response);
+import java.io.IOException;
+
+/**
+ * The error of a fetch that didn't complete within its {@link RetryPolicy#getTimeout()}.
+ */
+public class FetchTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public FetchTimeoutException(String message) {
+        super(message);
+    }
 }
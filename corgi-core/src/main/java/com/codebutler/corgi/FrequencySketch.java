@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ * Portions Copyright (C) 2015 Ben Manes, from Caffeine (https://github.com/ben-manes/caffeine)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codebutler.corgi;
+
+/**
+ * Estimates how often keys have been seen recently, for {@link TinyLfuCache}'s admission decisions.
+ *
+ * <p>A count-min sketch with four 4-bit counters per key, packed sixteen to a long. A key's
+ * estimate is the smallest of its counters, so collisions can only overestimate it. Once the
+ * number of increments reaches ten times the number of counters, every counter is halved, so old
+ * popularity fades.
+ *
+ * <p>Adapted from Caffeine's {@code FrequencySketch}, licensed under the Apache License, Version
+ * 2.0; the seeds, masks and reset arithmetic are unchanged from it.
+ *
+ * <p>Not thread-safe.
+ */
+final class FrequencySketch {
+    /** Highest count a counter holds. */
+    static final int MAX_FREQUENCY = 15;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK   = 0x1111111111111111L;
+
+    private static final int MAX_TABLE_SIZE = 1 << 24;
+
+    private final long[] mTable;
+    private final int mTableMask;
+    private final int mSampleSize;
+    private int mAdditions;
+
+    /**
+     * @param capacity the number of keys expected to be tracked. The sketch doesn't grow, since
+     *                 growing would forget all counts.
+     */
+    FrequencySketch(int capacity) {
+        int size = Math.min(Math.max(capacity, 1), MAX_TABLE_SIZE);
+        mTable      = new long[ceilingPowerOfTwo(size)];
+        mTableMask  = mTable.length - 1;
+        mSampleSize = 10 * mTable.length;
+    }
+
+    /**
+     * Returns the estimated number of times {@code hash} was seen, up to {@link #MAX_FREQUENCY}.
+     */
+    int frequency(int hash) {
+        hash = spread(hash);
+        int start = (hash & 3) << 2;
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < 4; i++) {
+            int shift = (start + i) << 2;
+            int count = (int) ((mTable[indexOf(hash, i)] >>> shift) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts one more sighting of {@code hash}.
+     */
+    void increment(int hash) {
+        hash = spread(hash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            long shift = (start + i) << 2;
+            long mask = 0xFL << shift;
+            if ((mTable[index] & mask) != mask) {
+                mTable[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++mAdditions >= mSampleSize) {
+            reset();
+        }
+    }
+
+    /** Halves every counter. */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < mTable.length; i++) {
+            odd += Long.bitCount(mTable[i] & ONE_MASK);
+            mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+        }
+        // Each key has four counters; halving rounds their odd counts down.
+        mAdditions = (mAdditions - (odd >>> 2)) >>> 1;
+    }
+
+    /** Picks the long holding the {@code i}th counter of {@code hash}. */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += (h >>> 32);
+        return ((int) h) & mTableMask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+    }
+}
@@ -16,24 +16,31 @@
 
 package com.codebutler.corgi;
 
-import com.google.gson.Gson;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 
 public abstract class GsonRequest<T> extends Request<T> {
     @Override
     public Response<T> readResponse(InputStream stream) throws IOException {
-        InputStreamReader isr = null;
+        GsonResponse.CountingInputStream counting = new GsonResponse.CountingInputStream(stream);
         try {
-            isr = new InputStreamReader(stream);
-            return new Gson().<Response<T>>fromJson(isr, getResponseClass());
-        } finally {
-            if (isr != null) {
-                isr.close();
+            GsonResponse<T> response = getSerializer().read(counting, getResponseClass());
+            if (response != null) {
+                response.setJsonSize(counting.getCount());
             }
+            return response;
+        } finally {
+            stream.close();
         }
     }
+
     public abstract Class<? extends GsonResponse<T>> getResponseClass();
+
+    /**
+     * Returns the serializer used to read cached responses. Must match
+     * {@link GsonResponse#getSerializer()}.
+     */
+    protected GsonSerializer getSerializer() {
+        return GsonSerializer.getDefault();
+    }
 }
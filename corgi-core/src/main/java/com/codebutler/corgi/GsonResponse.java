@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public abstract class GsonResponse<T> extends Response<T> {
+    /** Estimated heap retained by this response, or 0 if not yet fixed. */
+    private transient volatile int mRetainedSize;
+
+    protected GsonResponse(T object) {
+        super(object);
+    }
+
+    protected GsonResponse(Exception error) {
+        super(error);
+    }
+
+    @Override
+    public final void write(OutputStream stream) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(stream);
+        getSerializer().write(counting, this);
+        setJsonSize(counting.getCount());
+    }
+
+    /**
+     * Returns the serializer used to write this response. Must match
+     * {@link GsonRequest#getSerializer()}.
+     */
+    protected GsonSerializer getSerializer() {
+        return GsonSerializer.getDefault();
+    }
+
+    /**
+     * Records the size, in bytes, of this response's JSON form, such as the length of the body it
+     * was parsed from. Responses read from or written to the disk cache record it themselves. Has
+     * no effect once {@link #getRetainedSize()} has been fixed.
+     */
+    protected final void setJsonSize(long bytes) {
+        if (mRetainedSize == 0 && bytes > 0) {
+            mRetainedSize = (int) Math.min(Integer.MAX_VALUE, bytes * 2);
+        }
+    }
+
+    /**
+     * Estimates the retained size from the size of this response's JSON form, as recorded by
+     * {@link #setJsonSize}. Each byte of JSON roughly stands for two bytes of heap once the object
+     * graph is inflated. If no size was recorded yet, uses the default guess. Fixed on first use.
+     */
+    @Override
+    public int getRetainedSize() {
+        int retainedSize = mRetainedSize;
+        if (retainedSize == 0) {
+            retainedSize = super.getRetainedSize();
+            mRetainedSize = retainedSize;
+        }
+        return retainedSize;
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = in.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = in.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException {
+            out.write(buffer, offset, count);
+            mCount += count;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
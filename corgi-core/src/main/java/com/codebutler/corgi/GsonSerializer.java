@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe JSON serializer shared by {@link GsonRequest} and {@link GsonResponse}.
+ *
+ * <p>Wraps a single {@link Gson} instance and caches its {@link TypeAdapter} per class, so the
+ * reflection work happens once per response class rather than on every cache read and write.
+ * Always reads and writes UTF-8. Writes follow the {@link Gson} instance's settings, such as
+ * {@link GsonBuilder#serializeNulls()} and {@link GsonBuilder#setPrettyPrinting()}.
+ *
+ * <p>To customize serialization, configure a {@link GsonBuilder} and either install the result
+ * with {@link #setDefault} or return it from {@link GsonRequest#getSerializer()} and
+ * {@link GsonResponse#getSerializer()}.
+ */
+public class GsonSerializer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    private static volatile GsonSerializer sDefault = new GsonSerializer();
+
+    private final Gson mGson;
+    private final ConcurrentHashMap<Class<?>, TypeAdapter<?>> mAdapters =
+        new ConcurrentHashMap<Class<?>, TypeAdapter<?>>();
+
+    public static GsonSerializer getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Replaces the serializer used by requests and responses that don't override
+     * {@code getSerializer()}.
+     */
+    public static void setDefault(GsonSerializer serializer) {
+        if (serializer == null) {
+            throw new IllegalArgumentException("serializer is required");
+        }
+        sDefault = serializer;
+    }
+
+    public GsonSerializer() {
+        this(new GsonBuilder());
+    }
+
+    public GsonSerializer(GsonBuilder builder) {
+        mGson = builder.create();
+    }
+
+    /**
+     * Reads a {@code type} from a UTF-8 JSON stream. Does not close the stream.
+     */
+    public <T> T read(InputStream stream, Class<T> type) throws IOException {
+        // InputStreamReader already reads the stream in large blocks, and JsonReader buffers the
+        // decoded characters itself.
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, UTF_8));
+        reader.setLenient(true);
+        return getAdapter(type).read(reader);
+    }
+
+    /**
+     * Writes {@code value} to {@code stream} as UTF-8 JSON. Flushes, but does not close, the
+     * stream.
+     */
+    public void write(OutputStream stream, Object value) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF_8), BUFFER_SIZE);
+        write(writer, value);
+        writer.flush();
+    }
+
+    /**
+     * Writes {@code value} to {@code writer} as JSON.
+     */
+    public void write(Writer writer, Object value) throws IOException {
+        // Gson 2.2 doesn't expose its JsonWriter settings, so let it create the writer.
+        try {
+            mGson.toJson(value, value.getClass(), writer);
+        } catch (JsonIOException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the cached type adapter for {@code type}, creating it on first use.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> getAdapter(Class<T> type) {
+        TypeAdapter<?> adapter = mAdapters.get(type);
+        if (adapter == null) {
+            adapter = mGson.getAdapter(type);
+            TypeAdapter<?> existing = mAdapters.putIfAbsent(type, adapter);
+            if (existing != null) {
+                adapter = existing;
+            }
+        }
+        return (TypeAdapter<T>) adapter;
+    }
+}
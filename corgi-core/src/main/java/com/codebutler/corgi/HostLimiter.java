@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Tracks fetches in flight per host, shared by all {@link RequestDispatcher} workers.
+ */
+public class HostLimiter {
+    /** Maximum concurrent fetches per host, or 0 for no limit. */
+    private final int mMaxPerHost;
+
+    /** Number of fetches in flight for each host. */
+    private final Map<String, Integer> mActive = new HashMap<String, Integer>();
+
+    /** Requests parked because their host was at capacity. */
+    private final Map<String, Queue<Request>> mDeferred = new HashMap<String, Queue<Request>>();
+
+    public HostLimiter(int maxPerHost) {
+        mMaxPerHost = maxPerHost;
+    }
+
+    /**
+     * Takes a slot for the request's host. If the host is at capacity the request is parked and
+     * false is returned; it will be handed back by {@link #release} once a slot frees up.
+     */
+    public synchronized boolean acquire(Request request) {
+        String host = request.getHost();
+        if (host == null || mMaxPerHost <= 0) {
+            return true;
+        }
+        Integer active = mActive.get(host);
+        int count = (active != null) ? active : 0;
+        if (count >= mMaxPerHost) {
+            Queue<Request> deferred = mDeferred.get(host);
+            if (deferred == null) {
+                deferred = new PriorityQueue<Request>();
+                mDeferred.put(host, deferred);
+            }
+            deferred.add(request);
+            return false;
+        }
+        mActive.put(host, count + 1);
+        return true;
+    }
+
+    /**
+     * Removes {@code request} if it is parked. Returns true if it was.
+     */
+    public synchronized boolean remove(Request request) {
+        String host = request.getHost();
+        Queue<Request> deferred = (host != null) ? mDeferred.get(host) : null;
+        if (deferred == null || !deferred.remove(request)) {
+            return false;
+        }
+        if (deferred.isEmpty()) {
+            mDeferred.remove(host);
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the slot taken by {@link #acquire}.
+     *
+     * @return the next parked request for the same host, which should be queued again, or null.
+     */
+    public synchronized Request release(Request request) {
+        String host = request.getHost();
+        if (host == null || mMaxPerHost <= 0) {
+            return null;
+        }
+        Integer active = mActive.get(host);
+        if (active == null || active <= 1) {
+            mActive.remove(host);
+        } else {
+            mActive.put(host, active - 1);
+        }
+        Queue<Request> deferred = mDeferred.get(host);
+        if (deferred == null) {
+            return null;
+        }
+        Request next = deferred.poll();
+        if (deferred.isEmpty()) {
+            mDeferred.remove(host);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codebutler.corgi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the list of keys that were in the memory cache when Corgi was last stopped,
+ * most recently used first, so the memory cache can be warmed up from the disk cache on the next
+ * start.
+ */
+final class HotKeys {
+    private static final String TAG = "CorgiHotKeys";
+
+    private static final String FILE_NAME = "corgi-hot-keys";
+    private static final String TEMP_FILE_NAME = "corgi-hot-keys.tmp";
+
+    private static final int MAGIC = 0xC0A6140F;
+    private static final int VERSION = 1;
+
+    /** At most this many keys are saved. */
+    private static final int MAX_KEYS = 1024;
+
+    /** Longer keys are not saved, which keeps them within the limits of writeUTF. */
+    private static final int MAX_KEY_LENGTH = 4096;
+
+    private HotKeys() {}
+
+    /**
+     * Saves up to {@link #MAX_KEYS} of {@code keys}, which are ordered most recently used first.
+     * The previous list is replaced only once the new one is complete.
+     */
+    static void write(File cacheDir, int appVersion, List<String> keys) {
+        List<String> saved = new ArrayList<String>();
+        for (String key : keys) {
+            if (saved.size() == MAX_KEYS) {
+                break;
+            }
+            if (key.length() <= MAX_KEY_LENGTH) {
+                saved.add(key);
+            }
+        }
+
+        File temp = new File(cacheDir, TEMP_FILE_NAME);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(appVersion);
+                output.writeInt(saved.size());
+                for (String key : saved) {
+                    output.writeUTF(key);
+                }
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(new File(cacheDir, FILE_NAME))) {
+                throw new IOException("Failed to rename " + temp);
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to save hot keys", ex);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Returns the keys saved by {@link #write}, most recently used first. Returns an empty list if
+     * there are none, or if they were saved by another version of the app.
+     */
+    static List<String> read(File cacheDir, int appVersion) {
+        File file = new File(cacheDir, FILE_NAME);
+        List<String> keys = new ArrayList<String>();
+        if (!file.exists()) {
+            return keys;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readInt() != appVersion) {
+                    return keys;
+                }
+                int count = Math.min(input.readInt(), MAX_KEYS);
+                for (int i = 0; i < count; i++) {
+                    keys.add(input.readUTF());
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to read hot keys", ex);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+
+/**
+ * Logs through {@code java.util.logging}, using each tag as a logger name.
+ */
+public class JavaLogger implements Logger {
+    private final ConcurrentMap<String, java.util.logging.Logger> mLoggers =
+        new ConcurrentHashMap<String, java.util.logging.Logger>();
+
+    @Override
+    public boolean isLoggable(String tag, int level) {
+        return getLogger(tag).isLoggable(toLevel(level));
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable error) {
+        getLogger(tag).log(toLevel(level), message, error);
+    }
+
+    private java.util.logging.Logger getLogger(String tag) {
+        java.util.logging.Logger logger = mLoggers.get(tag);
+        if (logger == null) {
+            logger = java.util.logging.Logger.getLogger(tag);
+            mLoggers.putIfAbsent(tag, logger);
+        }
+        return logger;
+    }
+
+    private static Level toLevel(int level) {
+        switch (level) {
+            case Log.VERBOSE:
+                return Level.FINEST;
+            case Log.DEBUG:
+                return Level.FINE;
+            case Log.INFO:
+                return Level.INFO;
+            case Log.WARN:
+                return Level.WARNING;
+            default:
+                return Level.SEVERE;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+/**
+ * Logging for Corgi, forwarded to the installed {@link Logger}. Logs through
+ * {@code java.util.logging} until another logger is installed.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG   = 3;
+    public static final int INFO    = 4;
+    public static final int WARN    = 5;
+    public static final int ERROR   = 6;
+
+    private static volatile Logger sLogger = new JavaLogger();
+
+    private Log() {}
+
+    public static Logger getLogger() {
+        return sLogger;
+    }
+
+    public static void setLogger(Logger logger) {
+        if (logger == null) {
+            throw new IllegalArgumentException("logger is required");
+        }
+        sLogger = logger;
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return sLogger.isLoggable(tag, level);
+    }
+
+    public static void v(String tag, String message) {
+        log(VERBOSE, tag, message, null);
+    }
+
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        log(WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        log(WARN, tag, message, error);
+    }
+
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        log(ERROR, tag, message, error);
+    }
+
+    private static void log(int level, String tag, String message, Throwable error) {
+        Logger logger = sLogger;
+        if (logger.isLoggable(tag, level)) {
+            logger.log(level, tag, message, error);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+/**
+ * Destination for Corgi's log messages. Install one with {@link Log#setLogger}.
+ *
+ * <p>Levels are those of {@link Log}: {@link Log#VERBOSE} up to {@link Log#ERROR}.
+ */
+public interface Logger {
+    /**
+     * Returns whether messages for {@code tag} at {@code level} would be logged. Called before
+     * building debug messages on hot paths, so it should be cheap.
+     */
+    boolean isLoggable(String tag, int level);
+
+    /**
+     * Logs {@code message}, and {@code error} if it isn't null.
+     */
+    void log(int level, String tag, String message, Throwable error);
+}
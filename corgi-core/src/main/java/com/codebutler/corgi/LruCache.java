@@ -26,8 +26,14 @@ import java.util.Map;
  * framework's implementation. See the framework SDK documentation for a class
  * overview.
  */
-public class LruCache<K, V> {
+public class LruCache<K, V> implements MemoryCache<K, V> {
+    /**
+     * Entries from least to most recently used. Kept in insertion order, with
+     * {@link #get} and {@link #put} moving entries to the end themselves, so
+     * that {@link #peek} can look up an entry without moving it.
+     */
     private final LinkedHashMap<K, V> map;
+    private final Weigher<? super K, ? super V> weigher;
 
     /** Size of this cache in units. Not necessarily the number of elements. */
     private int size;
@@ -45,11 +51,21 @@ public class LruCache<K, V> {
      *     this is the maximum sum of the sizes of the entries in this cache.
      */
     public LruCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * @param maxSize the maximum sum of the sizes of the entries in this cache.
+     * @param weigher computes entry sizes for {@link #sizeOf}, or null to count
+     *     entries.
+     */
+    public LruCache(int maxSize, Weigher<? super K, ? super V> weigher) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
         this.maxSize = maxSize;
-        this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+        this.weigher = weigher;
+        this.map = new LinkedHashMap<K, V>(0, 0.75f, false);
     }
 
     /**
@@ -65,8 +81,9 @@ public class LruCache<K, V> {
 
         V mapValue;
         synchronized (this) {
-            mapValue = map.get(key);
+            mapValue = map.remove(key);
             if (mapValue != null) {
+                map.put(key, mapValue);
                 hitCount++;
                 return mapValue;
             }
@@ -106,6 +123,53 @@ public class LruCache<K, V> {
         }
     }
 
+    /**
+     * Returns true if {@code key} is cached. Unlike {@link #get}, this doesn't
+     * move the entry or call {@code #create}.
+     */
+    public final synchronized boolean containsKey(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns the value for {@code key}, or null if it is not cached. Unlike
+     * {@link #get}, this doesn't move the entry, count a hit or miss, or call
+     * {@code #create}.
+     */
+    public final synchronized V peek(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return map.get(key);
+    }
+
+    /**
+     * Caches {@code value} for {@code key} only if {@code key} is not cached
+     * yet. The value is moved to the head of the queue.
+     *
+     * @return true if {@code value} was cached.
+     */
+    public final boolean putIfAbsent(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        synchronized (this) {
+            if (map.containsKey(key)) {
+                return false;
+            }
+            putCount++;
+            size += safeSizeOf(key, value);
+            map.put(key, value);
+        }
+
+        trimToSize(maxSize);
+        return true;
+    }
+
     /**
      * Caches {@code value} for {@code key}. The value is moved to the head of
      * the queue.
@@ -121,7 +185,8 @@ public class LruCache<K, V> {
         synchronized (this) {
             putCount++;
             size += safeSizeOf(key, value);
-            previous = map.put(key, value);
+            previous = map.remove(key);
+            map.put(key, value);
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
             }
@@ -193,6 +258,29 @@ public class LruCache<K, V> {
         return previous;
     }
 
+    /**
+     * Removes the entry for {@code key} only if it is currently mapped to
+     * {@code value}.
+     *
+     * @return true if the entry was removed.
+     */
+    public final boolean remove(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        synchronized (this) {
+            if (!value.equals(map.get(key))) {
+                return false;
+            }
+            map.remove(key);
+            size -= safeSizeOf(key, value);
+        }
+
+        entryRemoved(false, key, value, null);
+        return true;
+    }
+
     /**
      * Called for entries that have been evicted or removed. This method is
      * invoked when a value is evicted to make space, removed by a call to
@@ -239,13 +327,14 @@ public class LruCache<K, V> {
 
     /**
      * Returns the size of the entry for {@code key} and {@code value} in
-     * user-defined units.  The default implementation returns 1 so that size
-     * is the number of entries and max size is the maximum number of entries.
+     * user-defined units.  The default implementation asks the cache's
+     * {@link Weigher}, or returns 1 if there is none so that size is the number
+     * of entries and max size is the maximum number of entries.
      *
      * <p>An entry's size must not change while it is in the cache.
      */
     protected int sizeOf(K key, V value) {
-        return 1;
+        return (weigher != null) ? weigher.weigh(key, value) : 1;
     }
 
     /**
@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default {@link DiskCache}, backed by {@link DiskLruCache}.
+ *
+ * <p>Entries live in a generation directory: "corgi" for generation 0, then "corgi-1", "corgi-2"
+ * and so on. Clearing the cache just switches to a fresh generation, which makes the old entries
+ * invisible at once. The old generation is closed and deleted on a background thread as soon as
+ * no read or write is using it any more.
+ *
+ * <p>Each entry has two values: the payload written by the response, and a few bytes of metadata
+ * holding its date and {@link Validators}. A response that was revalidated only rewrites the
+ * metadata.
+ */
+public class LruDiskCache implements DiskCache {
+    private static final String TAG = "CorgiDiskCache";
+
+    private static final String DIRECTORY_NAME = "corgi";
+    private static final String GENERATION_SEPARATOR = "-";
+
+    /** Value holding the response as written by {@link Response#write}. */
+    private static final int PAYLOAD = 0;
+
+    /** Value holding the date and validators. */
+    private static final int METADATA = 1;
+
+    private static final int VALUE_COUNT = 2;
+
+
+    /** Suffix of the file holding the payload of a clean DiskLruCache entry. */
+    private static final String CLEAN_FILE_SUFFIX = "." + PAYLOAD;
+
+    /** Name of DiskLruCache's journal file. */
+    private static final String JOURNAL_FILE = "journal";
+
+    /** Directory holding the generation directories. */
+    private final File mParentDir;
+
+    /** Version of the app; entries written by other versions are discarded. */
+    private final int mAppVersion;
+
+    /** Maximum size in bytes of each generation. */
+    private final long mMaxSize;
+
+    /** Creates the threads that delete old generations. */
+    private final ThreadFactory mThreadFactory;
+
+    /** The generation reads and writes currently go to. */
+    private volatile Generation mGeneration;
+
+    /** Records read and deserialization time. */
+    private final CorgiMetrics mMetrics;
+
+    /**
+     * @param parentDir Directory to keep the generation directories in
+     * @param appVersion Version of the app; entries written by other versions are discarded
+     * @param maxSize Maximum size in bytes
+     * @param threadFactory Creates the threads that delete old generations
+     * @param metrics Metrics to record to
+     */
+    public LruDiskCache(File parentDir, int appVersion, long maxSize, ThreadFactory threadFactory, CorgiMetrics metrics) {
+        mParentDir     = parentDir;
+        mAppVersion    = appVersion;
+        mMaxSize       = maxSize;
+        mThreadFactory = threadFactory;
+        mMetrics       = metrics;
+
+        // Pick up the newest generation and get rid of any older ones left over from a clear()
+        // that didn't finish before the process died.
+        int current = 0;
+        List<File> stale = new ArrayList<File>();
+        File[] files = mParentDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int number = parseGeneration(file.getName());
+                if (number < 0) {
+                    continue;
+                }
+                if (number > current) {
+                    stale.add(generationDir(current));
+                    current = number;
+                } else if (number < current) {
+                    stale.add(file);
+                }
+            }
+        }
+        for (File dir : stale) {
+            deleteLater(dir, null);
+        }
+
+        mGeneration = new Generation(current);
+        // Open eagerly so the first read doesn't pay for it.
+        mGeneration.cache();
+    }
+
+    @Override
+    public Response read(Request request) throws Exception {
+        Generation generation = acquire();
+        try {
+            return read(generation, request);
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Reads the cached responses for {@code requests}, in the same order, pinning the current
+     * generation once for all of them. Entries that are missing come back as null. Entries that
+     * can't be read are removed and also come back as null.
+     */
+    @Override
+    public Response[] readAll(List<Request> requests) {
+        Response[] responses = new Response[requests.size()];
+        Generation generation = acquire();
+        try {
+            for (int i = 0; i < responses.length; i++) {
+                Request request = requests.get(i);
+                try {
+                    responses[i] = read(generation, request);
+                } catch (Exception ex) {
+                    Log.w(TAG, "Failed to read " + request.getCacheKey() + " from disk cache", ex);
+                    try {
+                        generation.keys.remove(request.getCacheKey());
+                        generation.cache().remove(request.getCacheKey());
+                    } catch (IOException ignored) {}
+                }
+            }
+        } finally {
+            generation.release();
+        }
+        return responses;
+    }
+
+    private Response read(Generation generation, Request request) throws Exception {
+        long start = mMetrics.startTimer();
+        try {
+            DiskLruCache.Snapshot snapshot = generation.cache().get(request.getCacheKey());
+            if (snapshot == null) {
+                generation.evicted(request.getCacheKey());
+                return null;
+            }
+            try {
+                Response response;
+                long deserializeStart = mMetrics.startTimer();
+                try {
+                    response = request.readResponse(snapshot.getInputStream(PAYLOAD));
+                } finally {
+                    mMetrics.stopTimer(CorgiMetrics.Timer.DESERIALIZE, deserializeStart);
+                }
+                if (response != null) {
+                    EntryMetadata.read(snapshot.getInputStream(METADATA), response);
+                    response.setStored(true);
+                }
+                return response;
+            } finally {
+                snapshot.close();
+            }
+        } finally {
+            mMetrics.stopTimer(CorgiMetrics.Timer.DISK_READ, start);
+        }
+    }
+
+    /**
+     * Writes {@code response} for {@code key}. Does nothing if the entry is already being edited.
+     * If the payload of {@code response} is already on disk, only its metadata is written.
+     */
+    @Override
+    public void put(String key, Response response) throws Exception {
+        Generation generation = acquire();
+        try {
+            DiskLruCache.Editor editor = generation.cache().edit(key);
+            if (editor == null) {
+                return;
+            }
+            boolean committed = false;
+            try {
+                if (!response.isStored() || !hasValue(editor, PAYLOAD)) {
+                    OutputStream outputStream = editor.newOutputStream(PAYLOAD);
+                    try {
+                        response.write(outputStream);
+                        outputStream.flush();
+                    } finally {
+                        outputStream.close();
+                    }
+                }
+                EntryMetadata.write(editor.newOutputStream(METADATA), response);
+                editor.commit();
+                committed = true;
+                response.setStored(true);
+                generation.keys.add(key);
+            } finally {
+                if (!committed) {
+                    editor.abort();
+                }
+            }
+            generation.reindexIfJournalRebuilt();
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Returns true if the entry being edited already has a committed value at {@code index}.
+     */
+    private static boolean hasValue(DiskLruCache.Editor editor, int index) throws IOException {
+        InputStream stream = editor.newInputStream(index);
+        if (stream == null) {
+            return false;
+        }
+        stream.close();
+        return true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        Generation generation = acquire();
+        try {
+            generation.cache().flush();
+        } finally {
+            generation.release();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws IOException {
+        Generation generation = acquire();
+        try {
+            generation.keys.remove(key);
+            return generation.cache().remove(key);
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Removes all entries whose key begins with {@code prefix}.
+     *
+     * @return the number of entries removed.
+     */
+    @Override
+    public int removeByPrefix(String prefix) throws IOException {
+        Generation generation = acquire();
+        try {
+            int count = 0;
+            Set<String> keys = generation.indexedKeys().withPrefix(prefix);
+            for (String key : keys) {
+                if (generation.cache().remove(key)) {
+                    count++;
+                }
+                // Either removed now or already evicted; the key is gone either way.
+                keys.remove(key);
+            }
+            return count;
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Removes all entries. Returns immediately: the old generation becomes invisible at once and is
+     * deleted in the background once reads and writes still using it are done.
+     */
+    @Override
+    public void clear() {
+        Generation old;
+        synchronized (this) {
+            old = mGeneration;
+            mGeneration = new Generation(old.number + 1);
+        }
+        old.retire();
+    }
+
+    /**
+     * Returns the current generation, pinned until {@link Generation#release()} is called.
+     */
+    private Generation acquire() {
+        while (true) {
+            Generation generation = mGeneration;
+            generation.refs.incrementAndGet();
+            if (generation == mGeneration) {
+                return generation;
+            }
+            // Lost a race with clear(). Try again with the new generation.
+            generation.release();
+        }
+    }
+
+    private File generationDir(int number) {
+        String name = (number == 0) ? DIRECTORY_NAME : DIRECTORY_NAME + GENERATION_SEPARATOR + number;
+        return new File(mParentDir, name);
+    }
+
+    /**
+     * Returns the generation number of a directory name, or -1 if it isn't a generation directory.
+     */
+    private static int parseGeneration(String name) {
+        if (name.equals(DIRECTORY_NAME)) {
+            return 0;
+        }
+        String prefix = DIRECTORY_NAME + GENERATION_SEPARATOR;
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            int number = Integer.parseInt(name.substring(prefix.length()));
+            return (number > 0) ? number : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes {@code cache}, if any, and deletes {@code dir} on a background thread.
+     */
+    private void deleteLater(final File dir, final DiskLruCache cache) {
+        Thread thread = mThreadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (cache != null) {
+                        cache.delete();
+                    }
+                    Utils.deleteRecursively(dir);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Failed to delete old disk cache " + dir, ex);
+                }
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * One generation of the cache, with a count of the reads and writes using it.
+     */
+    private class Generation {
+        final int number;
+        final File directory;
+
+        /**
+         * Keys written to this generation. DiskLruCache evicts on its own without telling us, so
+         * this may also hold keys that are already gone. Those are dropped when a read misses them
+         * or a removal gets to them, and all at once when the journal is rebuilt.
+         */
+        final PrefixIndex keys = new PrefixIndex();
+
+        final AtomicInteger refs = new AtomicInteger();
+        final AtomicBoolean deleted = new AtomicBoolean();
+        volatile boolean retired;
+
+        private DiskLruCache mCache;
+
+        /** Whether the keys already on disk have been added to {@link #keys}. */
+        private boolean mKeysIndexed;
+
+        /** Length of the journal when last checked, to notice when it gets rebuilt. */
+        private long mJournalLength;
+
+        Generation(int number) {
+            this.number = number;
+            this.directory = generationDir(number);
+        }
+
+        /**
+         * Returns the DiskLruCache for this generation, opening it on first use.
+         */
+        synchronized DiskLruCache cache() {
+            if (mCache == null) {
+                mCache = Utils.openDiskLruCache(directory, mAppVersion, VALUE_COUNT, mMaxSize);
+            }
+            return mCache;
+        }
+
+        /**
+         * Returns the key index, complete with the entries that were on disk when the generation
+         * was opened. Only removal by prefix needs those, so they are indexed on first use rather
+         * than when opening.
+         */
+        synchronized PrefixIndex indexedKeys() {
+            cache();
+            if (!mKeysIndexed) {
+                indexKeys();
+                mKeysIndexed = true;
+            }
+            return keys;
+        }
+
+        /**
+         * Drops {@code key} from the index if a read found no entry for it and its payload file is
+         * gone, meaning DiskLruCache evicted it.
+         */
+        void evicted(String key) {
+            if (!new File(directory, key + CLEAN_FILE_SUFFIX).exists()) {
+                keys.remove(key);
+            }
+        }
+
+        /**
+         * Re-seeds the index if DiskLruCache rebuilt its journal since the last check. The journal
+         * only grows between rebuilds, and it is rebuilt once enough entries were evicted or
+         * overwritten, so this bounds the evicted keys the index can hold on to.
+         */
+        synchronized void reindexIfJournalRebuilt() {
+            long length = new File(directory, JOURNAL_FILE).length();
+            boolean rebuilt = length < mJournalLength;
+            mJournalLength = length;
+            if (rebuilt) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Journal of " + directory + " was rebuilt, re-indexing keys");
+                }
+                indexKeys();
+                mKeysIndexed = true;
+            }
+        }
+
+        /**
+         * Replaces the key index with the entries on disk. DiskLruCache has no API to list its
+         * keys, so this scans the directory; it only runs on first use and after a journal rebuild.
+         * Clearing first means a key committed during the scan is either listed or added after.
+         */
+        private void indexKeys() {
+            keys.clear();
+            String[] fileNames = directory.list();
+            if (fileNames == null) {
+                return;
+            }
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(CLEAN_FILE_SUFFIX)) {
+                    keys.add(fileName.substring(0, fileName.length() - CLEAN_FILE_SUFFIX.length()));
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0 && retired) {
+                delete();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            if (refs.get() == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            if (!deleted.compareAndSet(false, true)) {
+                return;
+            }
+            DiskLruCache cache;
+            synchronized (this) {
+                cache = mCache;
+            }
+            deleteLater(directory, cache);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe in-memory cache.
+ */
+public interface MemoryCache<K, V> {
+    /**
+     * Returns the value for {@code key}, or null if it is not cached.
+     */
+    V get(K key);
+
+    /**
+     * Returns true if {@code key} is cached. Unlike {@link #get}, this doesn't count as a use of
+     * the entry when deciding what to evict.
+     */
+    boolean containsKey(K key);
+
+    /**
+     * Returns the value for {@code key}, or null if it is not cached. Like {@link #containsKey},
+     * this doesn't count as a use of the entry or as a hit or miss.
+     */
+    V peek(K key);
+
+    /**
+     * Caches {@code value} for {@code key}.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    V put(K key, V value);
+
+    /**
+     * Caches {@code value} for {@code key} only if {@code key} is not cached yet, atomically.
+     *
+     * @return true if {@code value} was cached.
+     */
+    boolean putIfAbsent(K key, V value);
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    V remove(K key);
+
+    /**
+     * Removes the entry for {@code key} only if it is currently mapped to {@code value}.
+     *
+     * @return true if the entry was removed.
+     */
+    boolean remove(K key, V value);
+
+    /**
+     * Clears the cache.
+     */
+    void evictAll();
+
+    /**
+     * Returns the sum of the sizes of the entries in this cache.
+     */
+    int size();
+
+    /**
+     * Returns the maximum sum of the sizes of the entries in this cache.
+     */
+    int maxSize();
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from least recently accessed
+     * to most recently accessed as closely as the implementation tracks it.
+     */
+    Map<K, V> snapshot();
+}
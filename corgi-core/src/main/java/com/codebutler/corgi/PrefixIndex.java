@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted, thread-safe set of cache keys, so that every key sharing a prefix can be found in time
+ * proportional to the number of matches.
+ */
+public class PrefixIndex {
+    private final ConcurrentSkipListSet<String> mKeys = new ConcurrentSkipListSet<String>();
+
+    public void add(String key) {
+        mKeys.add(key);
+    }
+
+    public void remove(String key) {
+        mKeys.remove(key);
+    }
+
+    public void clear() {
+        mKeys.clear();
+    }
+
+    /**
+     * Returns a live view of the keys starting with {@code prefix}. Safe to iterate while keys are
+     * added and removed.
+     */
+    public Set<String> withPrefix(String prefix) {
+        return mKeys.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+}
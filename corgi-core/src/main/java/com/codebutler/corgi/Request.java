@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Based on code from Volley
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.InputStream;
+import java.util.List;
+
+public abstract class Request<T> implements Comparable<Request<T>> {
+    /**
+     * Priority values. Requests are processed from higher priorities to lower priorities, in
+     * FIFO order within the same priority.
+     */
+    public enum Priority {
+        IMMEDIATE,
+        HIGH,
+        NORMAL,
+        LOW,
+        PREFETCH
+    }
+
+    /** Whether or not the cache should be checked before fetching this request. */
+    private boolean mShouldCheckCache = true;
+
+    /** Priority of this request. */
+    private Priority mPriority = Priority.NORMAL;
+
+    /** Sequence number of this request, used to enforce FIFO ordering. */
+    private long mSequence;
+
+    /**
+     * Handle returned by {@link Corgi#fetch}, or null before this request is fetched. Only replaced
+     * by a new fetch once the previous one has left Corgi, see {@link #mFetching}.
+     */
+    private volatile RequestFuture<T> mFuture;
+
+    /**
+     * Whether a fetch of this request is still somewhere in Corgi: queued, waiting on a duplicate,
+     * being fetched or waiting to be retried. Unlike the future, which completes as soon as the
+     * request is cancelled, this is only cleared once nothing will touch the request any more.
+     * Guarded by this.
+     */
+    private boolean mFetching;
+
+    /**
+     * Whether this request is the one in flight for its cache key, with duplicates waiting on it.
+     * Guarded by Corgi's waiting requests lock.
+     */
+    private boolean mInFlight;
+
+    /** Expired cached response with validators, passed to {@link #fetch(RequestCallback, Response)}. */
+    private volatile Response<T> mExpiredResponse;
+
+    /**
+     * Number of times the current fetch of this request has been retried. Reset when a fetch
+     * starts, otherwise only touched by the request dispatchers.
+     */
+    private int mRetries;
+
+    public abstract void fetch(RequestCallback<T> callback);
+
+    /**
+     * Fetches this request when an expired response with {@link Response#getValidators validators}
+     * is cached for it. Requests that can revalidate override this to send the validators, and
+     * call {@link RequestCallback#onNotModified} if the server reports no change. By default, or
+     * when {@code expired} is null, this calls {@link #fetch(RequestCallback)}.
+     */
+    public void fetch(RequestCallback<T> callback, Response<T> expired) {
+        fetch(callback);
+    }
+
+    public String getCacheKey() {
+        return null;
+    }
+
+    /**
+     * Returns the host this request talks to. Used to cap the number of concurrent fetches per
+     * host. Requests returning null are not limited.
+     */
+    public String getHost() {
+        return null;
+    }
+
+    /**
+     * Reads a cached response from {@code stream} and closes it. The default implementation uses
+     * {@link #getCacheCodec()}, if any.
+     */
+    public Response<T> readResponse(InputStream stream) throws Exception {
+        CacheCodec<T> codec = getCacheCodec();
+        if (codec == null) {
+            return null;
+        }
+        try {
+            return codec.read(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the cache policy for failures Corgi reports for this request itself, such as a
+     * timeout or {@link #fetch} throwing. Only its {@link CachePolicy#getErrorMaxAge() error max
+     * age} is used. Responses the request completes with carry their own policy. By default, or
+     * when this returns null, such failures aren't remembered.
+     */
+    public CachePolicy getCachePolicy() {
+        return null;
+    }
+
+    /**
+     * Returns the deadline and retry rules for fetching this request, or null to use the
+     * {@link Corgi.Builder#retryPolicy default}.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * Returns a key shared by requests that can be fetched together in one upstream call, or null
+     * if this request can't be batched. Requests with the same batch key that miss both caches in
+     * one {@link Corgi#fetchAll} call are merged with {@link #createBatch}.
+     */
+    public String getBatchKey() {
+        return null;
+    }
+
+    /**
+     * Merges {@code requests}, all with this request's batch key, into a single request. The merged
+     * request reports each response through {@link RequestCallback#onExtraResponse} with the cache
+     * key of the request it answers, then calls {@link RequestCallback#onComplete}. If the merged
+     * request fails, requests it didn't answer get its error response. If it succeeds, they are
+     * fetched on their own. If this returns null, as it does by default, the requests are fetched
+     * one by one.
+     */
+    public Request<?> createBatch(List<Request<T>> requests) {
+        return null;
+    }
+
+    /**
+     * Returns the codec used to read cached responses, or null if this request overrides
+     * {@link #readResponse} instead. Must match the response's {@link Response#getCacheCodec()}.
+     */
+    public CacheCodec<T> getCacheCodec() {
+        return null;
+    }
+
+    /**
+     * Set whether or not the cache should be checked before fetching this request.
+     */
+    public final void setCheckCache(boolean checkCache) {
+        mShouldCheckCache = checkCache;
+    }
+
+    /**
+     * Whether or not the cache should be checked before fetching this request.
+     */
+    public boolean shouldCheckCache() {
+        return mShouldCheckCache;
+    }
+
+    /**
+     * Set the priority of this request. Must be called before the request is handed to
+     * {@link Corgi#fetch(Request)}.
+     */
+    public final void setPriority(Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority is required");
+        }
+        mPriority = priority;
+    }
+
+    /**
+     * Returns the priority of this request; {@link Priority#NORMAL} by default.
+     */
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Sets the sequence number of this request. Used by {@link Corgi}.
+     */
+    final void setSequence(long sequence) {
+        mSequence = sequence;
+    }
+
+    /**
+     * Returns the sequence number of this request.
+     */
+    final long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns true if this request has been cancelled through its {@link RequestFuture}.
+     */
+    public final boolean isCanceled() {
+        RequestFuture<T> future = mFuture;
+        return future != null && future.isCancelled();
+    }
+
+    /**
+     * Starts a new fetch of this request with {@code future} as its handle, resetting the per-fetch
+     * state. Returns false, changing nothing, if the previous fetch hasn't {@link #endFetch ended},
+     * even if its future was cancelled.
+     */
+    final synchronized boolean startFetch(RequestFuture<T> future) {
+        if (mFetching) {
+            return false;
+        }
+        mFetching = true;
+        mFuture   = future;
+        mRetries  = 0;
+        return true;
+    }
+
+    /**
+     * Marks the current fetch as having left Corgi, so the request can be fetched again. Called
+     * when its response is delivered, or when it is cancelled before any dispatcher took it.
+     */
+    final synchronized void endFetch() {
+        mFetching = false;
+    }
+
+    final RequestFuture<T> getFuture() {
+        return mFuture;
+    }
+
+    final void setInFlight(boolean inFlight) {
+        mInFlight = inFlight;
+    }
+
+    final boolean isInFlight() {
+        return mInFlight;
+    }
+
+    final void setExpiredResponse(Response<T> expired) {
+        mExpiredResponse = expired;
+    }
+
+    final Response<T> getExpiredResponse() {
+        return mExpiredResponse;
+    }
+
+    final int incrementRetries() {
+        return ++mRetries;
+    }
+
+    /**
+     * Returns true if responses to this request should be cached.
+     */
+    public final boolean shouldCache() {
+        return getCacheKey() != null;
+    }
+
+    @Override
+    public int compareTo(Request<T> other) {
+        return comparePriority(getPriority(), mSequence, other.getPriority(), other.mSequence);
+    }
+
+    /**
+     * Orders by priority, higher priorities first, then by sequence number to keep FIFO ordering
+     * within the same priority.
+     */
+    static int comparePriority(Priority priority, long sequence, Priority otherPriority, long otherSequence) {
+        if (priority != otherPriority) {
+            return priority.ordinal() - otherPriority.ordinal();
+        }
+        return (sequence < otherSequence) ? -1 : ((sequence == otherSequence) ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        if (getCacheKey() != null) {
+            return "Request{cacheKey=" + getCacheKey() + "}";
+        }
+        return super.toString();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+public interface RequestCallback<T> {
+    public void onExtraResponse(String cacheKey, Response response);
+    public void onComplete(Response<T> response);
+
+    /**
+     * Completes a fetch given an expired response by reporting that the server still has the same
+     * data. The expired response becomes current again, with new {@code validators} if they are
+     * not null, and is delivered without being read or written again. Its
+     * {@link Response#getCachePolicy cache policy} doesn't change, so caching headers on the
+     * not-modified reply are ignored.
+     */
+    public void onNotModified(Validators validators);
+}
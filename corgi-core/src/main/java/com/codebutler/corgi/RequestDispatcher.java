@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Based on code from Volley
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class RequestDispatcher extends Dispatcher {
+    private static final String TAG = "CorgiRequestDispatcher";
+
+    /** Randomizes retry backoff. */
+    private static final Random sRandom = new Random();
+
+    /** The queue of requests to service. */
+    private final BlockingQueue<Request> mQueue;
+
+    /** The queue of responses to be cached and delivered. */
+    private final BlockingQueue<RequestResponse> mResponseQueue;
+
+    /** Caps concurrent fetches per host across all dispatchers. */
+    private final HostLimiter mHostLimiter;
+
+    /** Fetch deadlines and delayed retries, run by the {@link Watchdog}. */
+    private final BlockingQueue<Watchdog.Task> mWatchdogQueue;
+
+    /** Used for requests that don't have their own retry policy. */
+    private final RetryPolicy mDefaultRetryPolicy;
+
+    /** Records fetch latency. */
+    private final CorgiMetrics mMetrics;
+
+    /**
+     * Creates a new fetch worker. Several workers may share the same queues and host limiter.
+     * You must call {@link #start} in order to begin processing.
+     *
+     * @param queue Queue of requests to fetch
+     * @param responseQueue Queue to post responses to
+     * @param hostLimiter Per-host concurrency limit shared between workers
+     * @param watchdogQueue Queue to schedule deadlines and retries on
+     * @param defaultRetryPolicy Retry policy for requests without one
+     * @param metrics Metrics to record to
+     */
+    RequestDispatcher(BlockingQueue<Request> queue, BlockingQueue<RequestResponse> responseQueue,
+            HostLimiter hostLimiter, BlockingQueue<Watchdog.Task> watchdogQueue,
+            RetryPolicy defaultRetryPolicy, CorgiMetrics metrics) {
+        mQueue = queue;
+        mResponseQueue = responseQueue;
+        mHostLimiter = hostLimiter;
+        mWatchdogQueue = watchdogQueue;
+        mDefaultRetryPolicy = defaultRetryPolicy;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                // Take a request from the queue.
+                final Request request = mQueue.take();
+
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Got request " + request);
+                }
+
+                // Park the request if its host already has too many fetches in flight.
+                if (!mHostLimiter.acquire(request)) {
+                    if (Log.isLoggable(TAG, Log.DEBUG)) {
+                        Log.d(TAG, "Host limit reached, deferring " + request);
+                    }
+                    continue;
+                }
+
+                // Perform the request asynchronously. Post response to ResponseDispatcher.
+                Attempt attempt = new Attempt(request, getRetryPolicy(request));
+                attempt.begin();
+
+            } catch (InterruptedException e) {
+                // We may have been interrupted because it was time to quit.
+                if (isQuitting()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private RetryPolicy getRetryPolicy(Request request) {
+        RetryPolicy retryPolicy = request.getRetryPolicy();
+        return (retryPolicy != null) ? retryPolicy : mDefaultRetryPolicy;
+    }
+
+    /**
+     * One call to {@link Request#fetch}. Completes when the request calls back or when its deadline
+     * passes, whichever comes first; the other is then ignored. A fetch that overruns its deadline
+     * is not interrupted, but its cache key is released so duplicates waiting on it don't hang. It
+     * keeps its host slot until it calls back, since it is still talking to the host.
+     */
+    private class Attempt extends Watchdog.Task implements RequestCallback {
+        private final Request mRequest;
+        private final RetryPolicy mRetryPolicy;
+        private final AtomicBoolean mDone = new AtomicBoolean();
+        private final AtomicBoolean mCalledBack = new AtomicBoolean();
+        private long mStart;
+
+        Attempt(Request request, RetryPolicy retryPolicy) {
+            super(retryPolicy.getTimeout());
+            mRequest = request;
+            mRetryPolicy = retryPolicy;
+        }
+
+        @SuppressWarnings("unchecked")
+        void begin() {
+            mStart = mMetrics.startTimer();
+            if (mRetryPolicy.getTimeout() > 0) {
+                mWatchdogQueue.add(this);
+            }
+            try {
+                mRequest.fetch(this, mRequest.getExpiredResponse());
+            } catch (RuntimeException ex) {
+                Log.e(TAG, "Fetch failed: " + mRequest, ex);
+                onComplete(new ErrorResponse(ex, mRequest.getCachePolicy()));
+            }
+        }
+
+        @Override
+        public void onExtraResponse(String cacheKey, Response response) {
+            try {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "onExtraResponse: " + mRequest + " " + cacheKey + " " + response);
+                }
+                // Responses to a merged request go to the requests they answer.
+                Request target = (mRequest instanceof BatchRequest)
+                    ? ((BatchRequest) mRequest).take(cacheKey) : null;
+                if (target != null) {
+                    mResponseQueue.put(new RequestResponse(target, response));
+                } else {
+                    mResponseQueue.put(new RequestResponse(cacheKey, response, mRequest));
+                }
+            } catch (InterruptedException ignored) {}
+        }
+
+        @Override
+        public void onComplete(Response response) {
+            try {
+                if (complete(response)) {
+                    finish(response);
+                }
+            } finally {
+                releaseHost();
+            }
+        }
+
+        @Override
+        public void onNotModified(Validators validators) {
+            Response expired = mRequest.getExpiredResponse();
+            if (expired == null) {
+                onComplete(new ErrorResponse(new IllegalStateException("Not modified, but nothing is cached"),
+                    mRequest.getCachePolicy()));
+                return;
+            }
+            try {
+                if (complete(expired)) {
+                    mMetrics.increment(CorgiMetrics.Counter.NOT_MODIFIED);
+                    expired.refresh(new Date(), validators);
+                    finish(expired);
+                }
+            } finally {
+                releaseHost();
+            }
+        }
+
+        /**
+         * The fetch called back, on time or not. Lets the next parked request for this host go.
+         */
+        private void releaseHost() {
+            if (!mCalledBack.compareAndSet(false, true)) {
+                return;
+            }
+            Request next = mHostLimiter.release(mRequest);
+            if (next != null) {
+                mQueue.add(next);
+            }
+        }
+
+        /**
+         * Returns true if this is the first outcome of the attempt.
+         */
+        private boolean complete(Response response) {
+            if (!mDone.compareAndSet(false, true)) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Ignoring late response: " + mRequest + " " + response);
+                }
+                return false;
+            }
+            mWatchdogQueue.remove(this);
+            return true;
+        }
+
+        /**
+         * The deadline passed.
+         */
+        @Override
+        public void run() {
+            if (!mDone.compareAndSet(false, true)) {
+                return;
+            }
+            mMetrics.increment(CorgiMetrics.Counter.TIMEOUT);
+            Log.w(TAG, "Fetch timed out after " + mRetryPolicy.getTimeout() + "ms: " + mRequest);
+            finish(new ErrorResponse(new FetchTimeoutException("Timed out fetching " + mRequest),
+                mRequest.getCachePolicy()));
+        }
+
+        private void finish(Response response) {
+            mMetrics.stopTimer(CorgiMetrics.Timer.FETCH, mStart);
+            try {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "onResponse: " + mRequest + " " + response);
+                }
+                if (!retry(response)) {
+                    post(mRequest, response);
+                }
+            } catch (InterruptedException ignored) {}
+        }
+
+        /**
+         * Schedules another attempt if the policy allows it. Returns false if {@code response} is
+         * final.
+         */
+        private boolean retry(final Response response) {
+            if (response.success() || mRequest.isCanceled() || !mRetryPolicy.shouldRetry(response.getError())) {
+                return false;
+            }
+            int retry = mRequest.incrementRetries();
+            if (retry > mRetryPolicy.getMaxRetries()) {
+                return false;
+            }
+            long backoff = mRetryPolicy.getBackoff(retry, sRandom);
+            mMetrics.increment(CorgiMetrics.Counter.RETRY);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Retry " + retry + " in " + backoff + "ms: " + mRequest + " " + response.getError());
+            }
+            mWatchdogQueue.add(new Watchdog.Task(backoff) {
+                @Override
+                public void run() {
+                    // Still in flight for its cache key, so a cancelled request must complete to
+                    // release the duplicates waiting on it.
+                    if (mRequest.isCanceled()) {
+                        try {
+                            post(mRequest, response);
+                        } catch (InterruptedException ignored) {}
+                    } else {
+                        mQueue.add(mRequest);
+                    }
+                }
+            });
+            return true;
+        }
+    }
+
+    private void post(Request request, Response response) throws InterruptedException {
+        if (request instanceof BatchRequest) {
+            completeBatch((BatchRequest) request, response);
+        } else {
+            mResponseQueue.put(new RequestResponse(request, response));
+        }
+    }
+
+    /**
+     * Settles the requests a merged request didn't answer. They share its error if it failed, and
+     * are fetched on their own otherwise.
+     */
+    private void completeBatch(BatchRequest batch, Response response) throws InterruptedException {
+        for (Request request : batch.takeRemaining()) {
+            if (response.success()) {
+                mQueue.add(request);
+            } else {
+                mResponseQueue.put(new RequestResponse(request, response));
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending response to one request, returned by {@link Corgi#fetch}.
+ *
+ * <p>Failed fetches still complete normally: check {@link Response#success()} on the result.
+ * Cancelling removes the request from Corgi's queues if no dispatcher has picked it up yet. A
+ * request that is already being read or fetched runs to completion and its response is still
+ * cached, but it is no longer delivered, neither here nor to {@link Corgi.Listener}.
+ */
+public class RequestFuture<T> implements Future<Response<T>> {
+    /**
+     * Called once with the response.
+     */
+    public interface Listener<T> {
+        void onResponse(Response<T> response);
+    }
+
+    private final Corgi mCorgi;
+    private final Request<T> mRequest;
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+
+    // Guarded by this.
+    private List<Listener<T>> mListeners = new ArrayList<Listener<T>>(1);
+    private Response<T> mResponse;
+    private boolean mDone;
+    private volatile boolean mCancelled;
+
+    RequestFuture(Corgi corgi, Request<T> request) {
+        mCorgi   = corgi;
+        mRequest = request;
+    }
+
+    public Request<T> getRequest() {
+        return mRequest;
+    }
+
+    /**
+     * Calls {@code listener} with the response once it arrives, on the thread delivering it, or
+     * right away if it already has. Never called if the request is cancelled.
+     */
+    public void addListener(Listener<T> listener) {
+        Response<T> response;
+        synchronized (this) {
+            if (!mDone) {
+                mListeners.add(listener);
+                return;
+            }
+            if (mCancelled) {
+                return;
+            }
+            response = mResponse;
+        }
+        listener.onResponse(response);
+    }
+
+    /**
+     * Sets the response and calls the listeners. Returns false if this future was cancelled or
+     * already completed.
+     */
+    boolean complete(Response<T> response) {
+        List<Listener<T>> listeners;
+        synchronized (this) {
+            if (mDone) {
+                return false;
+            }
+            mDone      = true;
+            mResponse  = response;
+            listeners  = mListeners;
+            mListeners = null;
+        }
+        mLatch.countDown();
+        for (Listener<T> listener : listeners) {
+            listener.onResponse(response);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the request. Dispatchers never interrupt a fetch, so {@code mayInterruptIfRunning}
+     * is ignored.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (mDone) {
+                return false;
+            }
+            mDone      = true;
+            mCancelled = true;
+            mListeners = null;
+        }
+        mLatch.countDown();
+        mCorgi.cancel(mRequest);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    @Override
+    public Response<T> get() throws InterruptedException {
+        mLatch.await();
+        return getResponse();
+    }
+
+    @Override
+    public Response<T> get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!mLatch.await(timeout, unit)) {
+            throw new TimeoutException("Timed out waiting for " + mRequest);
+        }
+        return getResponse();
+    }
+
+    private synchronized Response<T> getResponse() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+        return mResponse;
+    }
+}
@@ -20,17 +20,27 @@ public class RequestResponse implements Comparable<RequestResponse> {
     private final String mCacheKey;
     private final Request mRequest;
     private final Response mResponse;
+    private final Request.Priority mPriority;
+    private final long mSequence;
 
     public RequestResponse(Request request, Response response) {
         mRequest  = request;
         mResponse = response;
         mCacheKey = null;
+        mPriority = request.getPriority();
+        mSequence = request.getSequence();
     }
 
-    public RequestResponse(String cacheKey, Response response) {
+    /**
+     * Creates an extra response for {@code cacheKey}, delivered with the same priority as the
+     * request that produced it.
+     */
+    public RequestResponse(String cacheKey, Response response, Request source) {
         mCacheKey = cacheKey;
         mResponse = response;
         mRequest  = null;
+        mPriority = source.getPriority();
+        mSequence = source.getSequence();
     }
 
     public Request getRequest() {
@@ -47,6 +57,6 @@ public class RequestResponse implements Comparable<RequestResponse> {
 
     @Override
     public int compareTo(RequestResponse another) {
-        return 0;
+        return Request.comparePriority(mPriority, mSequence, another.mPriority, another.mSequence);
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.OutputStream;
+import java.util.Date;
+
+public abstract class Response<T> {
+    /** Guess at the heap retained by a response when nothing better is known. */
+    private static final int DEFAULT_RETAINED_SIZE = 1024;
+
+    private final T mObject;
+    private final Exception mError;
+
+    /** Moved forward when the server confirms the response is still current. */
+    private volatile Date mDate;
+
+    /** Kept by the disk cache next to the payload, not written by the codec. */
+    private transient volatile Validators mValidators;
+
+    /** Whether the payload of this response is already in the disk cache. */
+    private transient volatile boolean mStored;
+
+    protected Response(T object) {
+        if (object == null) {
+            throw new IllegalArgumentException("object is required");
+        }
+
+        mDate   = new Date();
+        mObject = object;
+        mError  = null;
+    }
+
+    protected Response(Exception error) {
+        if (error == null) {
+            throw new IllegalArgumentException("error is required");
+        }
+
+        mDate   = new Date();
+        mError   = error;
+        mObject  = null;
+    }
+
+    protected Response(Date date, T object, Exception error) {
+        if (object == null && error == null) {
+            throw new IllegalArgumentException("object or error required");
+        }
+
+        mDate   = date;
+        mObject = object;
+        mError  = error;
+    }
+
+    public boolean success() {
+        return (mError == null);
+    }
+
+    public T getObject() {
+        return mObject;
+    }
+
+    public Exception getError() {
+        return mError;
+    }
+
+    public Date getDate() {
+        return mDate;
+    }
+
+    /**
+     * Returns the validators used to revalidate this response once it expires, or null.
+     */
+    public Validators getValidators() {
+        return mValidators;
+    }
+
+    /**
+     * Attaches validators to this response. Call it before passing the response to the
+     * {@link RequestCallback}.
+     */
+    public void setValidators(Validators validators) {
+        mValidators = validators;
+    }
+
+    /**
+     * Marks this response as current again, as of {@code date}. Replaces the validators unless
+     * {@code validators} is null.
+     *
+     * <p>Only the date and validators change. The cache policy still comes from
+     * {@link #getCachePolicy}, which subclasses decide and which isn't stored with the entry, so
+     * a not-modified reply can't change how long the response stays fresh; caching headers it
+     * carries are ignored.
+     */
+    void refresh(Date date, Validators validators) {
+        mDate = date;
+        if (validators != null) {
+            mValidators = validators;
+        }
+    }
+
+    boolean isStored() {
+        return mStored;
+    }
+
+    void setStored(boolean stored) {
+        mStored = stored;
+    }
+
+    public CachePolicy getCachePolicy() {
+        return CachePolicy.NO_CACHE;
+    }
+
+    /**
+     * Returns an estimate, in bytes, of the heap retained by this response. Used to weigh the
+     * response in the memory cache. The default is a fixed guess; subclasses that know their
+     * payload should override this. Must not change once the response has been cached.
+     */
+    public int getRetainedSize() {
+        return DEFAULT_RETAINED_SIZE;
+    }
+
+    /**
+     * Writes this response to the disk cache. The default implementation uses
+     * {@link #getCacheCodec()}, if any.
+     */
+    public void write(OutputStream stream) throws Exception {
+        CacheCodec<T> codec = getCacheCodec();
+        if (codec == null) {
+            throw new IllegalStateException("not implemented");
+        }
+        codec.write(this, stream);
+    }
+
+    /**
+     * Returns the codec used to write this response to the disk cache, or null if this response
+     * overrides {@link #write} instead. Must match the request's {@link Request#getCacheCodec()}.
+     */
+    public CacheCodec<T> getCacheCodec() {
+        return null;
+    }
+
+    /**
+     * Returns true if this response has not expired. Failed responses expire after their policy's
+     * {@link CachePolicy#getErrorMaxAge() error max age}.
+     */
+    public boolean isValid() {
+        CachePolicy cachePolicy = getCachePolicy();
+        if (!success()) {
+            return (new Date().getTime() < getDate().getTime() + cachePolicy.getErrorMaxAge());
+        }
+        if (cachePolicy == CachePolicy.FOREVER) {
+            return true;
+        }
+        long expiresAt = getDate().getTime() + cachePolicy.getMaxAge();
+        return (new Date().getTime() < expiresAt);
+    }
+
+    /**
+     * Returns true if this response has expired but is still within its policy's
+     * stale-while-revalidate window, so it may be delivered while it is refreshed.
+     */
+    public boolean isStaleUsable() {
+        CachePolicy cachePolicy = getCachePolicy();
+        if (!success() || cachePolicy.getStaleWhileRevalidate() <= 0 || isValid()) {
+            return false;
+        }
+        long staleUntil = getDate().getTime() + cachePolicy.getMaxAge() + cachePolicy.getStaleWhileRevalidate();
+        return (new Date().getTime() < staleUntil);
+    }
+
+}
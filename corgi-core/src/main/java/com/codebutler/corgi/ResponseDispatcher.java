@@ -19,36 +19,24 @@
 
 package com.codebutler.corgi;
 
-import com.jakewharton.disklrucache.DiskLruCache;
-
-import java.io.OutputStream;
 import java.util.concurrent.PriorityBlockingQueue;
 
-public class ResponseDispatcher extends Thread {
+public class ResponseDispatcher extends Dispatcher {
     /** For posting responses. */
     private final Corgi mCorgi;
 
-    /** Used for telling us to die. */
-    private volatile boolean mQuit = false;
-
     private final PriorityBlockingQueue<RequestResponse> mResponseQueue;
-    private final LruCache<String, Response> mMemoryCache;
-    private final DiskCache mDiskCache;
+    private final MemoryCache<String, Response> mMemoryCache;
+    private final MemoryCache<String, Response> mNegativeCache;
+    private final DiskWriteQueue mDiskWriteQueue;
 
-    public ResponseDispatcher(Corgi corgi, PriorityBlockingQueue<RequestResponse> responseQueue, LruCache<String, Response> memoryCache, DiskCache diskCache) {
+    public ResponseDispatcher(Corgi corgi, PriorityBlockingQueue<RequestResponse> responseQueue, MemoryCache<String, Response> memoryCache,
+            MemoryCache<String, Response> negativeCache, DiskWriteQueue diskWriteQueue) {
         mCorgi = corgi;
         mResponseQueue = responseQueue;
         mMemoryCache = memoryCache;
-        mDiskCache = diskCache;
-    }
-
-    /**
-     * Forces this dispatcher to quit immediately.  If any requests are still in
-     * the queue, they are not guaranteed to be processed.
-     */
-    public void quit() {
-        mQuit = true;
-        interrupt();
+        mNegativeCache = negativeCache;
+        mDiskWriteQueue = diskWriteQueue;
     }
 
     @Override
@@ -59,23 +47,29 @@ public class ResponseDispatcher extends Thread {
 
                 String cacheKey = info.getCacheKey() != null ? info.getCacheKey() : info.getRequest().getCacheKey(); // FIXME
                 Response response = info.getResponse();
-                if (cacheKey != null && response.success()) {
+                boolean shouldCache = (cacheKey != null && response.success());
+                if (shouldCache) {
                     mMemoryCache.put(cacheKey, response);
-
-                    DiskLruCache.Editor editor = mDiskCache.edit(cacheKey);
-                    OutputStream outputStream = editor.newOutputStream(0);
-                    response.write(outputStream);
-                    outputStream.flush();
-                    outputStream.close();
-                    editor.commit();
+                    mNegativeCache.remove(cacheKey);
+                } else if (cacheKey != null && !response.success()
+                        && response.getCachePolicy().getErrorMaxAge() > 0) {
+                    // Remember the failure so repeated requests don't hammer a failing backend.
+                    mNegativeCache.put(cacheKey, response);
                 }
 
+                // Deliver before touching the disk. Requests arriving meanwhile are served from
+                // the memory cache or the write queue until the write lands.
                 if (info.getRequest() != null) {
                     mCorgi.finish(info.getRequest(), response);
                 }
 
+                // Hand off to the disk writer. Blocks if the disk is falling behind.
+                if (shouldCache) {
+                    mDiskWriteQueue.put(cacheKey, response);
+                }
+
             } catch (InterruptedException ignored) {
-                if (mQuit) {
+                if (isQuitting()) {
                     return;
                 }
 
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+/**
+ * Weighs memory cache entries in bytes, using {@link Response#getRetainedSize()}.
+ */
+public class ResponseWeigher implements Weigher<String, Response> {
+    /** Rough cost of the cache's own bookkeeping for one entry. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    @Override
+    public int weigh(String key, Response response) {
+        return ENTRY_OVERHEAD + (key.length() * 2) + response.getRetainedSize();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * How long a fetch may take, and how failed fetches are retried. Retries wait an exponentially
+ * growing backoff, randomized by the jitter so that clients failing together don't retry together.
+ */
+public class RetryPolicy {
+    /** Fails fetches after 30 seconds and retries I/O errors twice, starting one second apart. */
+    public static final RetryPolicy DEFAULT = new Builder().build();
+
+    /** No deadline and no retries. */
+    public static final RetryPolicy NONE = new Builder().timeout(0).maxRetries(0).build();
+
+    public static class Builder {
+        private long   mTimeout           = 30000;
+        private int    mMaxRetries        = 2;
+        private long   mInitialBackoff    = 1000;
+        private double mBackoffMultiplier = 2;
+        private long   mMaxBackoff        = 30000;
+        private double mJitter            = 0.5;
+
+        /**
+         * How long, in milliseconds, one attempt may take before it fails with a
+         * {@link FetchTimeoutException}. Use 0 for no deadline.
+         */
+        public Builder timeout(long timeout) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout < 0");
+            }
+            mTimeout = timeout;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries < 0");
+            }
+            mMaxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Backoff, in milliseconds, before the first retry. Each later retry waits
+         * {@code backoffMultiplier} times longer, up to {@code maxBackoff}.
+         */
+        public Builder backoff(long initialBackoff, double backoffMultiplier, long maxBackoff) {
+            if (initialBackoff < 0 || backoffMultiplier < 1 || maxBackoff < initialBackoff) {
+                throw new IllegalArgumentException("invalid backoff");
+            }
+            mInitialBackoff    = initialBackoff;
+            mBackoffMultiplier = backoffMultiplier;
+            mMaxBackoff        = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Fraction of each backoff that is randomized, between 0 and 1. With 0.5, a one second
+         * backoff waits between half a second and one second.
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be between 0 and 1");
+            }
+            mJitter = jitter;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+    private final long   mTimeout;
+    private final int    mMaxRetries;
+    private final long   mInitialBackoff;
+    private final double mBackoffMultiplier;
+    private final long   mMaxBackoff;
+    private final double mJitter;
+
+    protected RetryPolicy(Builder builder) {
+        mTimeout           = builder.mTimeout;
+        mMaxRetries        = builder.mMaxRetries;
+        mInitialBackoff    = builder.mInitialBackoff;
+        mBackoffMultiplier = builder.mBackoffMultiplier;
+        mMaxBackoff        = builder.mMaxBackoff;
+        mJitter            = builder.mJitter;
+    }
+
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Returns true if a fetch that failed with {@code error} should be tried again. By default
+     * only I/O errors, including timeouts, are retried.
+     */
+    public boolean shouldRetry(Exception error) {
+        return error instanceof IOException;
+    }
+
+    /**
+     * Returns how long, in milliseconds, to wait before retry number {@code retry}, counting from 1.
+     */
+    public long getBackoff(int retry, Random random) {
+        double backoff = mInitialBackoff * Math.pow(mBackoffMultiplier, retry - 1);
+        backoff = Math.min(backoff, mMaxBackoff);
+        return (long) (backoff * (1 - mJitter * random.nextDouble()));
+    }
+}
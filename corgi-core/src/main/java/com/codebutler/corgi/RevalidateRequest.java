@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.InputStream;
+
+/**
+ * Background refresh of a stale cached response. Fetches like the wrapped request, but its
+ * response only updates the caches and is never delivered to the listener.
+ */
+class RevalidateRequest<T> extends Request<T> {
+    private final Request<T> mRequest;
+
+    RevalidateRequest(Request<T> request) {
+        mRequest = request;
+        setPriority(Priority.LOW);
+        setCheckCache(false);
+    }
+
+    @Override
+    public void fetch(RequestCallback<T> callback) {
+        mRequest.fetch(callback);
+    }
+
+    @Override
+    public void fetch(RequestCallback<T> callback, Response<T> expired) {
+        mRequest.fetch(callback, expired);
+    }
+
+    @Override
+    public String getCacheKey() {
+        return mRequest.getCacheKey();
+    }
+
+    @Override
+    public CachePolicy getCachePolicy() {
+        return mRequest.getCachePolicy();
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return mRequest.getRetryPolicy();
+    }
+
+    @Override
+    public String getHost() {
+        return mRequest.getHost();
+    }
+
+    @Override
+    public Response<T> readResponse(InputStream stream) throws Exception {
+        return mRequest.readResponse(stream);
+    }
+
+    @Override
+    public CacheCodec<T> getCacheCodec() {
+        return mRequest.getCacheCodec();
+    }
+
+    @Override
+    public String toString() {
+        return "RevalidateRequest{cacheKey=" + getCacheKey() + "}";
+    }
+}
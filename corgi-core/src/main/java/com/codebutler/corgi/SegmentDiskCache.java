@@ -0,0 +1,898 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A {@link DiskCache} that appends entries to a few memory-mapped segment files and keeps the
+ * location of every entry in memory. A hit costs an index lookup and a decode straight from the
+ * mapping: no file is opened and nothing is copied through a read buffer.
+ *
+ * <ul>
+ *     <li>Segments are fixed-size files in the "corgi-segments" directory, each mapped once. Records
+ *          are appended to the newest one.</li>
+ *     <li>Once the maximum number of segments is reached, the oldest is dropped to make room.
+ *          Entries read since they were written get a second chance and are copied forward
+ *          first.</li>
+ *     <li>Removals are recorded as tombstones. Each time a segment fills up, a copy of the index
+ *          is saved to the "index" file. On open, the index is loaded from it, and only the
+ *          records written since are scanned. Without it, every segment is scanned.</li>
+ *     <li>Writes go to a shared mapping, which the kernel writes back even if the process dies.
+ *          Like DiskLruCache, nothing is fsynced: a power loss may lose recent writes. Each whole
+ *          record, header, key, payload and metadata, is checksummed, and a torn or corrupt record
+ *          ends the scan of its segment.</li>
+ *     <li>Clearing renames the directory out of the way and deletes it on a background thread.
+ *          The first write after that starts a new segment in a fresh directory.</li>
+ * </ul>
+ */
+public class SegmentDiskCache implements DiskCache {
+    private static final String TAG = "CorgiSegmentDiskCache";
+
+    private static final String DIRECTORY_NAME = "corgi-segments";
+    /** Cleared directories are renamed to this, followed by a number, until they are deleted. */
+    private static final String CLEARED_PREFIX = DIRECTORY_NAME + "-cleared-";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String INDEX_TEMP_FILE_NAME = "index.tmp";
+
+    private static final int MAGIC = 0xC0A61E5E;
+    /** Version 2 checksums whole records; version 1 only checksummed their headers. */
+    private static final int FORMAT_VERSION = 2;
+
+    /** Magic, format version and app version. */
+    private static final int SEGMENT_HEADER_SIZE = 12;
+
+    /** Type, checksum, key length, payload length and metadata length, without the key. */
+    private static final int RECORD_HEADER_SIZE = 15;
+
+    /** Unwritten space, or a record that was never completed. */
+    private static final byte TYPE_END = 0;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_METADATA = 2;
+    private static final byte TYPE_REMOVE = 3;
+
+    /** The cache is split into about this many segments. */
+    private static final int SEGMENT_COUNT = 8;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+    private final int mAppVersion;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+
+    /** Creates the threads that delete cleared directories. */
+    private final ThreadFactory mThreadFactory;
+
+    /** Records read and deserialization time. */
+    private final CorgiMetrics mMetrics;
+
+    /** Where each entry lives. Guarded by this. */
+    private final Map<String, Entry> mIndex = new HashMap<String, Entry>();
+
+    /** Keys in the index, for removal by prefix. */
+    private final PrefixIndex mKeys = new PrefixIndex();
+
+    /**
+     * Segments from oldest to newest. The last one is appended to. Empty after a clear until the
+     * next append. Guarded by this.
+     */
+    private final List<Segment> mSegments = new ArrayList<Segment>();
+
+    /** Number of the segment the next append starts when {@link #mSegments} is empty. */
+    private int mNextSegment;
+
+    /** Whether the index has changed enough to be saved again. Set under this. */
+    private volatile boolean mIndexDue;
+
+    /** Held while saving the index, so saves are written in order. Taken before this. */
+    private final Object mIndexFileLock = new Object();
+
+    /**
+     * @param parentDir Directory to keep the segment directory in
+     * @param appVersion Version of the app; segments written by other versions are discarded
+     * @param maxSize Maximum size in bytes
+     * @param threadFactory Creates the threads that delete cleared directories
+     * @param metrics Metrics to record to
+     */
+    public SegmentDiskCache(File parentDir, int appVersion, long maxSize, ThreadFactory threadFactory,
+            CorgiMetrics metrics) {
+        mDirectory     = new File(parentDir, DIRECTORY_NAME);
+        mAppVersion    = appVersion;
+        mSegmentSize   = (int) Math.min(Math.max(maxSize / SEGMENT_COUNT, MIN_SEGMENT_SIZE), MAX_SEGMENT_SIZE);
+        mMaxSegments   = (int) Math.max(2, maxSize / mSegmentSize);
+        mThreadFactory = threadFactory;
+        mMetrics       = metrics;
+
+        // Finish deleting directories cleared before the process died.
+        File[] files = parentDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(CLEARED_PREFIX)) {
+                    deleteLater(file);
+                }
+            }
+        }
+
+        synchronized (this) {
+            open();
+        }
+        saveIndexIfDue();
+    }
+
+    @Override
+    public Response read(Request request) throws Exception {
+        long start = mMetrics.startTimer();
+        try {
+            ByteBuffer payload;
+            ByteBuffer metadata;
+            synchronized (this) {
+                Entry entry = mIndex.get(request.getCacheKey());
+                if (entry == null) {
+                    return null;
+                }
+                entry.accessed = true;
+                payload  = entry.segment.slice(entry.payloadOffset, entry.payloadLength);
+                metadata = entry.metadataSegment.slice(entry.metadataOffset, entry.metadataLength);
+            }
+
+            Response response;
+            long deserializeStart = mMetrics.startTimer();
+            try {
+                response = request.readResponse(new ByteBufferInputStream(payload));
+            } finally {
+                mMetrics.stopTimer(CorgiMetrics.Timer.DESERIALIZE, deserializeStart);
+            }
+            if (response != null) {
+                EntryMetadata.read(new ByteBufferInputStream(metadata), response);
+                response.setStored(true);
+            }
+            return response;
+        } finally {
+            mMetrics.stopTimer(CorgiMetrics.Timer.DISK_READ, start);
+        }
+    }
+
+    @Override
+    public Response[] readAll(List<Request> requests) {
+        Response[] responses = new Response[requests.size()];
+        for (int i = 0; i < responses.length; i++) {
+            Request request = requests.get(i);
+            try {
+                responses[i] = read(request);
+            } catch (Exception ex) {
+                Log.w(TAG, "Failed to read " + request.getCacheKey() + " from disk cache", ex);
+                try {
+                    remove(request.getCacheKey());
+                } catch (IOException ignored) {}
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Appends {@code response} for {@code key}. The response is encoded before the index is
+     * locked, so reads aren't held up by it. Entries too large for a segment are not stored.
+     */
+    @Override
+    public void put(String key, Response response) throws Exception {
+        try {
+            store(key, response);
+        } finally {
+            saveIndexIfDue();
+        }
+    }
+
+    private void store(String key, Response response) throws Exception {
+        boolean metadataOnly;
+        synchronized (this) {
+            metadataOnly = response.isStored() && mIndex.containsKey(key);
+        }
+        ByteBuffer payload = metadataOnly ? null : encodePayload(response);
+        ByteBuffer metadata = encodeMetadata(response);
+
+        synchronized (this) {
+            if (payload == null) {
+                Location location = mIndex.containsKey(key) ? append(TYPE_METADATA, key, null, metadata) : null;
+                // The append may have copied the entry forward, or dropped it.
+                Entry entry = mIndex.get(key);
+                if (location != null && entry != null) {
+                    entry.metadataSegment = location.segment;
+                    entry.metadataOffset  = location.metadataOffset;
+                    entry.metadataLength  = metadata.remaining();
+                    response.setStored(true);
+                    return;
+                }
+                payload = encodePayload(response);
+            }
+
+            Location location = append(TYPE_PUT, key, payload, metadata);
+            if (location == null) {
+                Log.w(TAG, "Not caching " + key + ": " + payload.remaining() + " bytes is too large");
+                removeLocked(key);
+                return;
+            }
+            mIndex.put(key, new Entry(location.segment, location.payloadOffset, payload.remaining(),
+                location.segment, location.metadataOffset, metadata.remaining()));
+            mKeys.add(key);
+            response.setStored(true);
+        }
+    }
+
+    /**
+     * Does nothing: records are written straight to the mapped segments, and the kernel writes
+     * those back on its own.
+     */
+    @Override
+    public void flush() {}
+
+    @Override
+    public boolean remove(String key) throws IOException {
+        try {
+            synchronized (this) {
+                return removeLocked(key);
+            }
+        } finally {
+            saveIndexIfDue();
+        }
+    }
+
+    @Override
+    public int removeByPrefix(String prefix) throws IOException {
+        try {
+            synchronized (this) {
+                int count = 0;
+                Set<String> keys = mKeys.withPrefix(prefix);
+                for (String key : keys) {
+                    if (removeLocked(key)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        } finally {
+            saveIndexIfDue();
+        }
+    }
+
+    /**
+     * Removes all entries. Returns immediately: the directory is renamed out of the way and
+     * deleted on a background thread. Reads already decoding from a cleared segment still see its
+     * contents, since its mapping stays valid.
+     */
+    @Override
+    public synchronized void clear() {
+        mIndex.clear();
+        mKeys.clear();
+        mIndexDue = false;
+        mNextSegment = active().number + 1;
+        final List<Segment> segments = new ArrayList<Segment>(mSegments);
+        mSegments.clear();
+
+        File cleared = new File(mDirectory.getParentFile(), CLEARED_PREFIX + System.nanoTime());
+        if (mDirectory.renameTo(cleared)) {
+            deleteLater(cleared);
+        } else {
+            // Segment numbers keep going up, so the old files are never read again; only an index
+            // saved next to them could bring their entries back on the next open.
+            Log.w(TAG, "Failed to rename " + mDirectory + ", deleting it in place");
+            deleteIndexFile();
+            Thread thread = mThreadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (Segment segment : segments) {
+                        if (!segment.file.delete()) {
+                            Log.w(TAG, "Failed to delete " + segment.file);
+                        }
+                    }
+                }
+            });
+            thread.start();
+        }
+    }
+
+    /**
+     * Deletes {@code dir} on a background thread.
+     */
+    private void deleteLater(final File dir) {
+        Thread thread = mThreadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Utils.deleteRecursively(dir);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Failed to delete cleared disk cache " + dir, ex);
+                }
+            }
+        });
+        thread.start();
+    }
+
+    private boolean removeLocked(String key) throws IOException {
+        mKeys.remove(key);
+        if (mIndex.remove(key) == null) {
+            return false;
+        }
+        // Without a tombstone the entry would come back when the index is rebuilt.
+        append(TYPE_REMOVE, key, null, null);
+        return true;
+    }
+
+    /**
+     * Opens the existing segments, rebuilding the index, and makes sure there is one to append to.
+     */
+    private void open() {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new RuntimeException("Failed to create " + mDirectory);
+        }
+        int[] numbers = listSegments();
+        if (numbers.length == 0) {
+            // An index saved next to segments that are gone would point into the new ones.
+            deleteIndexFile();
+        }
+        try {
+            for (int i = 0; i < numbers.length; i++) {
+                boolean last = (i == numbers.length - 1);
+                File file = segmentFile(numbers[i]);
+                Segment segment = null;
+                try {
+                    segment = mapSegment(numbers[i], file, last);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Dropping unreadable segment " + file, ex);
+                }
+                if (segment == null) {
+                    file.delete();
+                    continue;
+                }
+                mSegments.add(segment);
+            }
+            int first = loadIndex();
+            for (int i = first; i < mSegments.size(); i++) {
+                scan(mSegments.get(i));
+            }
+            // Save a copy if more than the newest segment had to be scanned.
+            if (mSegments.size() - first > 1) {
+                mIndexDue = true;
+            }
+            Segment newest = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+            if (newest == null || !newest.writable) {
+                mSegments.add(createSegment((numbers.length > 0) ? numbers[numbers.length - 1] + 1 : 0));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to open disk cache segments", ex);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Opened " + mSegments.size() + " segments with " + mIndex.size() + " entries");
+        }
+    }
+
+    /**
+     * Returns the numbers of the segment files on disk, in ascending order.
+     */
+    private int[] listSegments() {
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (!name.startsWith(SEGMENT_PREFIX)) {
+                continue;
+            }
+            try {
+                numbers[count++] = Integer.parseInt(name.substring(SEGMENT_PREFIX.length()));
+            } catch (NumberFormatException ex) {
+                new File(mDirectory, name).delete();
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Maps an existing segment. Returns null if it was written by another version.
+     */
+    private Segment mapSegment(int number, File file, boolean writable) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            long length = randomAccessFile.length();
+            if (length < SEGMENT_HEADER_SIZE || length > mSegmentSize) {
+                return null;
+            }
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(mode, 0, writable ? mSegmentSize : length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != mAppVersion) {
+                return null;
+            }
+            Segment segment = new Segment(number, file, buffer, writable);
+            segment.end = SEGMENT_HEADER_SIZE;
+            return segment;
+        } finally {
+            // The mapping stays valid without the file descriptor.
+            randomAccessFile.close();
+        }
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        File file = segmentFile(number);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(8, mAppVersion);
+            Segment segment = new Segment(number, file, buffer, true);
+            segment.end = SEGMENT_HEADER_SIZE;
+            return segment;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private File segmentFile(int number) {
+        return new File(mDirectory, SEGMENT_PREFIX + number);
+    }
+
+    /**
+     * Replays the records of {@code segment} from its current end into the index, and finds where
+     * it really ends.
+     */
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int limit = buffer.capacity();
+        int position = segment.end;
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            byte type = buffer.get(position);
+            if (type == TYPE_END) {
+                break;
+            }
+            int keyLength = buffer.getShort(position + 5) & 0xFFFF;
+            int keyEnd = position + 7 + keyLength;
+            if (keyEnd + 8 > limit) {
+                break;
+            }
+            int payloadLength  = buffer.getInt(keyEnd);
+            int metadataLength = buffer.getInt(keyEnd + 4);
+            int payloadOffset  = keyEnd + 8;
+            int metadataOffset = payloadOffset + payloadLength;
+            int recordEnd      = metadataOffset + metadataLength;
+            if (payloadLength < 0 || metadataLength < 0 || recordEnd > limit || recordEnd < position
+                    || buffer.getInt(position + 1) != checksum(buffer, position + 5, recordEnd)) {
+                Log.w(TAG, "Corrupt record at " + position + " in " + segment.file);
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer keyBuffer = buffer.duplicate();
+            keyBuffer.position(position + 7);
+            keyBuffer.get(keyBytes);
+            String key = new String(keyBytes, UTF_8);
+
+            if (type == TYPE_PUT) {
+                mIndex.put(key, new Entry(segment, payloadOffset, payloadLength, segment, metadataOffset, metadataLength));
+                mKeys.add(key);
+            } else if (type == TYPE_METADATA) {
+                Entry entry = mIndex.get(key);
+                if (entry != null) {
+                    entry.metadataSegment = segment;
+                    entry.metadataOffset  = metadataOffset;
+                    entry.metadataLength  = metadataLength;
+                }
+            } else if (type == TYPE_REMOVE) {
+                mIndex.remove(key);
+                mKeys.remove(key);
+            }
+            position = recordEnd;
+        }
+        segment.end = position;
+    }
+
+    /**
+     * Appends a record to the newest segment, starting a new segment if it doesn't fit. Returns
+     * where it was written, or null if it is larger than half a segment. Starting a segment may
+     * fill up to half of it with entries copied forward, so only records that size always fit in
+     * the new one; anything larger could force a roll, and drop a segment, for every attempt.
+     */
+    private Location append(byte type, String key, ByteBuffer payload, ByteBuffer metadata) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int payloadLength  = (payload != null) ? payload.remaining() : 0;
+        int metadataLength = (metadata != null) ? metadata.remaining() : 0;
+        long size = (long) RECORD_HEADER_SIZE + keyBytes.length + payloadLength + metadataLength;
+        if (size > mSegmentSize / 2 || keyBytes.length > 0xFFFF) {
+            return null;
+        }
+        if (mSegments.isEmpty()) {
+            // First write since a clear.
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + mDirectory);
+            }
+            mSegments.add(createSegment(mNextSegment));
+        } else if (active().remaining() < size) {
+            roll();
+        }
+        Segment segment = active();
+        return write(segment, type, keyBytes, payload, metadata);
+    }
+
+    /**
+     * Writes a record at the end of {@code segment}, which must have room for it. Leaves the
+     * positions of {@code payload} and {@code metadata} unchanged.
+     */
+    private Location write(Segment segment, byte type, byte[] keyBytes, ByteBuffer payload, ByteBuffer metadata) {
+        int payloadLength  = (payload != null) ? payload.remaining() : 0;
+        int metadataLength = (metadata != null) ? metadata.remaining() : 0;
+        int position = segment.end;
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(position + 5);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.putInt(payloadLength);
+        buffer.putInt(metadataLength);
+        int payloadOffset = buffer.position();
+        if (payload != null) {
+            buffer.put(payload.duplicate());
+        }
+        if (metadata != null) {
+            buffer.put(metadata.duplicate());
+        }
+        buffer.putInt(position + 1, checksum(buffer, position + 5, buffer.position()));
+        // The type goes in last, so a record cut short is read back as the end of the segment.
+        buffer.put(position, type);
+        segment.end = buffer.position();
+
+        return new Location(segment, payloadOffset, payloadOffset + payloadLength);
+    }
+
+    /**
+     * Starts a new segment. If that is one too many, drops the oldest after copying forward the
+     * entries read since they were written, using up to half of the new segment. Copies keep
+     * their accessed flag.
+     */
+    private void roll() throws IOException {
+        Segment previous = active();
+        Segment segment = createSegment(previous.number + 1);
+        previous.writable = false;
+        mSegments.add(segment);
+        mIndexDue = true;
+
+        if (mSegments.size() <= mMaxSegments) {
+            return;
+        }
+        Segment oldest = mSegments.remove(0);
+        int copied = 0;
+        int dropped = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = mIndex.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.segment != oldest && entry.metadataSegment != oldest) {
+                continue;
+            }
+            byte[] keyBytes = mapEntry.getKey().getBytes(UTF_8);
+            long size = (long) RECORD_HEADER_SIZE + keyBytes.length + entry.payloadLength + entry.metadataLength;
+            if (entry.accessed && segment.end + size <= mSegmentSize / 2) {
+                Location location = write(segment, TYPE_PUT, keyBytes,
+                    entry.segment.slice(entry.payloadOffset, entry.payloadLength),
+                    entry.metadataSegment.slice(entry.metadataOffset, entry.metadataLength));
+                Entry copy = new Entry(segment, location.payloadOffset, entry.payloadLength,
+                    segment, location.metadataOffset, entry.metadataLength);
+                copy.accessed = entry.accessed;
+                mapEntry.setValue(copy);
+                copied++;
+            } else {
+                iterator.remove();
+                mKeys.remove(mapEntry.getKey());
+                dropped++;
+            }
+        }
+        if (!oldest.file.delete()) {
+            Log.w(TAG, "Failed to delete " + oldest.file);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Dropped " + oldest.file.getName() + ": " + dropped + " entries evicted, " + copied + " copied forward");
+        }
+    }
+
+    private Segment active() {
+        return mSegments.get(mSegments.size() - 1);
+    }
+
+    /**
+     * Saves a copy of the index if a segment has filled up since the last one. The copy is
+     * encoded under the lock and written outside it.
+     */
+    private void saveIndexIfDue() {
+        if (!mIndexDue) {
+            return;
+        }
+        synchronized (mIndexFileLock) {
+            Bytes bytes;
+            synchronized (this) {
+                if (!mIndexDue || mSegments.isEmpty()) {
+                    return;
+                }
+                mIndexDue = false;
+                try {
+                    bytes = encodeIndex();
+                } catch (IOException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+            File temp = new File(mDirectory, INDEX_TEMP_FILE_NAME);
+            try {
+                FileOutputStream out = new FileOutputStream(temp);
+                try {
+                    bytes.writeTo(out);
+                } finally {
+                    out.close();
+                }
+                if (!temp.renameTo(new File(mDirectory, INDEX_FILE_NAME))) {
+                    throw new IOException("Failed to rename " + temp);
+                }
+            } catch (IOException ex) {
+                // Not fatal: the next open scans more.
+                Log.w(TAG, "Failed to save disk cache index", ex);
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Encodes the index, followed by the end of the newest segment and a checksum. Everything
+     * appended after that end is replayed on top of it when loading.
+     */
+    private Bytes encodeIndex() throws IOException {
+        Bytes bytes = new Bytes();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Segment newest = active();
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(mAppVersion);
+        out.writeInt(newest.number);
+        out.writeInt(newest.end);
+        out.writeInt(mIndex.size());
+        for (Map.Entry<String, Entry> mapEntry : mIndex.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            byte[] keyBytes = mapEntry.getKey().getBytes(UTF_8);
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(entry.segment.number);
+            out.writeInt(entry.payloadOffset);
+            out.writeInt(entry.payloadLength);
+            out.writeInt(entry.metadataSegment.number);
+            out.writeInt(entry.metadataOffset);
+            out.writeInt(entry.metadataLength);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes;
+    }
+
+    /**
+     * Loads the saved index if it matches the mapped segments, leaving the end of its newest
+     * segment as the place to resume scanning. Returns the position in {@link #mSegments} of that
+     * segment, or 0 if every segment needs scanning.
+     */
+    private int loadIndex() {
+        File file = new File(mDirectory, INDEX_FILE_NAME);
+        if (!file.exists() || mSegments.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, Segment> segments = new HashMap<Integer, Segment>();
+        for (Segment segment : mSegments) {
+            segments.put(segment.number, segment);
+        }
+        try {
+            CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != mAppVersion) {
+                    return 0;
+                }
+                Segment newest = segments.get(in.readInt());
+                int end = in.readInt();
+                if (newest == null || end < SEGMENT_HEADER_SIZE || end > newest.buffer.capacity()) {
+                    return 0;
+                }
+                int count = in.readInt();
+                Map<String, Entry> index = new HashMap<String, Entry>();
+                for (int i = 0; i < count; i++) {
+                    byte[] keyBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(keyBytes);
+                    Segment segment = segments.get(in.readInt());
+                    int payloadOffset = in.readInt();
+                    int payloadLength = in.readInt();
+                    Segment metadataSegment = segments.get(in.readInt());
+                    int metadataOffset = in.readInt();
+                    int metadataLength = in.readInt();
+                    // Entries in segments dropped since the index was saved are gone.
+                    if (segment != null && metadataSegment != null
+                            && fits(segment, payloadOffset, payloadLength)
+                            && fits(metadataSegment, metadataOffset, metadataLength)) {
+                        index.put(new String(keyBytes, UTF_8), new Entry(segment, payloadOffset, payloadLength,
+                            metadataSegment, metadataOffset, metadataLength));
+                    }
+                }
+                int crc = (int) checked.getChecksum().getValue();
+                if (in.readInt() != crc) {
+                    Log.w(TAG, "Ignoring corrupt disk cache index");
+                    return 0;
+                }
+                mIndex.putAll(index);
+                for (String key : index.keySet()) {
+                    mKeys.add(key);
+                }
+                newest.end = end;
+                return mSegments.indexOf(newest);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to load disk cache index", ex);
+            return 0;
+        }
+    }
+
+    private static boolean fits(Segment segment, int offset, int length) {
+        return offset >= SEGMENT_HEADER_SIZE && length >= 0 && offset <= segment.buffer.capacity() - length;
+    }
+
+    private void deleteIndexFile() {
+        new File(mDirectory, INDEX_FILE_NAME).delete();
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int end) {
+        CRC32 crc = new CRC32();
+        ByteBuffer source = buffer.duplicate();
+        source.limit(end).position(start);
+        byte[] chunk = new byte[Math.min(end - start, 8192)];
+        while (source.hasRemaining()) {
+            int count = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer encodePayload(Response response) throws Exception {
+        Bytes bytes = new Bytes();
+        response.write(bytes);
+        return bytes.toByteBuffer();
+    }
+
+    private static ByteBuffer encodeMetadata(Response response) throws IOException {
+        Bytes bytes = new Bytes();
+        EntryMetadata.write(bytes, response);
+        return bytes.toByteBuffer();
+    }
+
+    /**
+     * One mapped segment file.
+     */
+    private static class Segment {
+        final int number;
+        final File file;
+        final MappedByteBuffer buffer;
+
+        /** Whether this is the segment being appended to. Guarded by the cache. */
+        boolean writable;
+
+        /** Offset just past the last record. Guarded by the cache. */
+        int end;
+
+        Segment(int number, File file, MappedByteBuffer buffer, boolean writable) {
+            this.number   = number;
+            this.file     = file;
+            this.buffer   = buffer;
+            this.writable = writable;
+        }
+
+        int remaining() {
+            return buffer.capacity() - end;
+        }
+
+        /**
+         * Returns a read-only view of {@code length} bytes at {@code offset}, independent of other
+         * views.
+         */
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice();
+        }
+    }
+
+    /**
+     * Where an entry's payload and metadata are. The metadata moves on its own when a revalidated
+     * response is stored again. Guarded by the cache.
+     */
+    private static class Entry {
+        final Segment segment;
+        final int payloadOffset;
+        final int payloadLength;
+        Segment metadataSegment;
+        int metadataOffset;
+        int metadataLength;
+
+        /** Read since it was written; earns a copy forward when its segment is dropped. */
+        boolean accessed;
+
+        Entry(Segment segment, int payloadOffset, int payloadLength,
+                Segment metadataSegment, int metadataOffset, int metadataLength) {
+            this.segment         = segment;
+            this.payloadOffset   = payloadOffset;
+            this.payloadLength   = payloadLength;
+            this.metadataSegment = metadataSegment;
+            this.metadataOffset  = metadataOffset;
+            this.metadataLength  = metadataLength;
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final int payloadOffset;
+        final int metadataOffset;
+
+        Location(Segment segment, int payloadOffset, int metadataOffset) {
+            this.segment        = segment;
+            this.payloadOffset  = payloadOffset;
+            this.metadataOffset = metadataOffset;
+        }
+    }
+
+    /**
+     * Collects an encoded payload or metadata, and wraps it without another copy.
+     */
+    private static class Bytes extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
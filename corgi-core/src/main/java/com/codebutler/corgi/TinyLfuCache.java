@@ -0,0 +1,648 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ * Portions Copyright (C) 2015 Ben Manes, from Caffeine (https://github.com/ben-manes/caffeine)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codebutler.corgi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryCache} that decides what to keep with W-TinyLFU, so that a burst of entries read
+ * once, such as a scroll through a long list, doesn't push out the entries read over and over.
+ *
+ * <p>New entries go into a small window, 1% of the size. Entries leaving the window are candidates
+ * for the main region, and only get in if a {@link FrequencySketch} estimates they are used more
+ * often than the entry they would push out. In the main region, entries start on probation and
+ * are promoted to the protected part, 80% of it, once read again.
+ *
+ * <p>As in {@link ConcurrentLruCache}, entries live in a {@link ConcurrentHashMap}, writes are
+ * split over segments by key hash, and the maximum size applies to the cache as a whole. Each
+ * segment has its own regions and sketch, sized from its even share. A candidate competes with
+ * the main region of its own segment; if that runs out while the cache is still too large, the
+ * other segments take turns giving up their probation entries. A hit only counts a read on the
+ * entry without taking a lock. The reads are folded into the sketch, and the entry moved, when a
+ * write to the segment next needs to evict and finds it at the front of its region, which
+ * approximates LRU within each region.
+ *
+ * <p>The policy and its region sizes follow Caffeine's {@code BoundedLocalCache}, licensed under
+ * the Apache License, Version 2.0.
+ */
+public class TinyLfuCache<K, V> implements MemoryCache<K, V> {
+    private static final int MAX_SEGMENTS = 64;
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Most keys the sketches of the whole cache track, split between the segments. Bounds their
+     * memory when the size is a weight, such as bytes, rather than a number of entries.
+     */
+    private static final int MAX_SKETCH_CAPACITY = 1 << 17;
+
+    private final ConcurrentHashMap<K, Node<K, V>> mMap;
+    private final Segment<K, V>[] mSegments;
+    private final int mSegmentMask;
+    private final int mMaxSize;
+    private final Weigher<? super K, ? super V> mWeigher;
+
+    /** Sum of the sizes of all entries, updated under the monitor of the entry's segment. */
+    private final AtomicLong mSize = new AtomicLong();
+
+    /** Spreads the segments that start eviction sweeps. */
+    private final AtomicInteger mEvictionCursor = new AtomicInteger();
+
+    /**
+     * @param maxSize the maximum sum of the sizes of the entries in this cache.
+     * @param weigher computes entry sizes, or null to count entries.
+     */
+    public TinyLfuCache(int maxSize, Weigher<? super K, ? super V> weigher) {
+        this(maxSize, Runtime.getRuntime().availableProcessors() * 4, weigher);
+    }
+
+    /**
+     * @param maxSize the maximum sum of the sizes of the entries in this cache.
+     * @param concurrencyLevel the expected number of threads writing to the cache at once.
+     * @param weigher computes entry sizes, or null to count entries.
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maxSize, int concurrencyLevel, Weigher<? super K, ? super V> weigher) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+
+        // Power of two segments. They only spread writes; the size limit is shared.
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS) {
+            segmentCount <<= 1;
+        }
+
+        mMaxSize     = maxSize;
+        mWeigher     = weigher;
+        mSegmentMask = segmentCount - 1;
+        mSegments    = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int segmentShare = (maxSize / segmentCount) + (i < (maxSize % segmentCount) ? 1 : 0);
+            mSegments[i] = new Segment<K, V>(segmentShare, MAX_SKETCH_CAPACITY / segmentCount, mSize);
+        }
+        mMap = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, segmentCount);
+    }
+
+    @Override
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Node<K, V> node = mMap.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Racy, so concurrent reads may count once. Stop writing once the sketch can't tell more.
+        int reads = node.reads;
+        if (reads < FrequencySketch.MAX_FREQUENCY) {
+            node.reads = reads + 1;
+        }
+        return node.value;
+    }
+
+    @Override
+    public final boolean containsKey(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return mMap.containsKey(key);
+    }
+
+    @Override
+    public final V peek(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        Node<K, V> node = mMap.get(key);
+        return (node != null) ? node.value : null;
+    }
+
+    @Override
+    public final V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public final boolean putIfAbsent(K key, V value) {
+        return put(key, value, true) == null;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}, unless {@code onlyIfAbsent} and {@code key} is
+     * already cached. Returns the value {@code key} was mapped to.
+     */
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        int size = safeSizeOf(key, value);
+        Segment<K, V> segment = segmentFor(key);
+        List<Node<K, V>> evicted = new ArrayList<Node<K, V>>(2);
+        Node<K, V> node;
+        V previous = null;
+        synchronized (segment) {
+            node = mMap.get(key);
+            if (node != null && onlyIfAbsent) {
+                return node.value;
+            }
+            segment.putCount++;
+            // A put usually follows a miss, which counts as a use of the key too.
+            segment.sketch.increment(key.hashCode());
+            if (node != null) {
+                previous = node.value;
+                node.region.size += size - node.size;
+                segment.grow(size - node.size);
+                node.value = value;
+                node.size = size;
+            } else {
+                node = new Node<K, V>(key, value, size);
+                mMap.put(key, node);
+                segment.window.append(node);
+                segment.grow(size);
+                segment.count++;
+                keyAdded(key);
+            }
+            evict(segment, evicted);
+        }
+        trim(segment, node, evicted);
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+        notifyEvicted(evicted);
+        return previous;
+    }
+
+    @Override
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        V previous;
+        synchronized (segment) {
+            Node<K, V> node = mMap.remove(key);
+            if (node == null) {
+                return null;
+            }
+            node.region.unlink(node);
+            segment.grow(-node.size);
+            segment.count--;
+            keyRemoved(key);
+            previous = node.value;
+        }
+
+        entryRemoved(false, key, previous, null);
+        return previous;
+    }
+
+    @Override
+    public final boolean remove(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Node<K, V> node = mMap.get(key);
+            if (node == null || !value.equals(node.value)) {
+                return false;
+            }
+            mMap.remove(key);
+            node.region.unlink(node);
+            segment.grow(-node.size);
+            segment.count--;
+            keyRemoved(key);
+        }
+
+        entryRemoved(false, key, value, null);
+        return true;
+    }
+
+    @Override
+    public final void evictAll() {
+        for (Segment<K, V> segment : mSegments) {
+            List<Node<K, V>> evicted = new ArrayList<Node<K, V>>();
+            synchronized (segment) {
+                for (Region<K, V> region : segment.regions()) {
+                    while (region.head != null) {
+                        drop(segment, region.head, evicted);
+                    }
+                }
+            }
+            notifyEvicted(evicted);
+        }
+    }
+
+    /**
+     * Moves entries out of the window until it fits in its share, admitting each into the main
+     * region or dropping it. Must be called with the segment's monitor held.
+     */
+    private void evict(Segment<K, V> segment, List<Node<K, V>> evicted) {
+        // Readers keep counting while this runs; bound the second chances so it always finishes.
+        segment.secondChances = 2 * segment.count;
+        Region<K, V> window = segment.window;
+        while (window.size > segment.windowMaxSize) {
+            Node<K, V> candidate = window.head;
+            if (candidate.reads > 0 && candidate != window.tail && segment.secondChances-- > 0) {
+                // Read while in the window: keep it there a while longer.
+                flushReads(segment, candidate);
+                window.unlink(candidate);
+                window.append(candidate);
+                continue;
+            }
+            window.unlink(candidate);
+            admit(segment, candidate, evicted);
+        }
+    }
+
+    /**
+     * Evicts entries until the cache fits in its maximum size after {@code added} was put into
+     * {@code segment}. That segment gives up probation entries first while it holds more than
+     * its share, then each segment in turn gives up one. {@code added} itself is only evicted if
+     * it can never fit. Takes one segment monitor at a time, so must be called without any held.
+     */
+    private void trim(Segment<K, V> segment, Node<K, V> added, List<Node<K, V>> evicted) {
+        if (added.size > mMaxSize) {
+            synchronized (segment) {
+                if (mMap.get(added.key) == added) {
+                    drop(segment, added, evicted);
+                }
+            }
+        }
+        synchronized (segment) {
+            segment.secondChances = 2 * segment.count;
+            while (mSize.get() > mMaxSize && segment.size > segment.share) {
+                Node<K, V> victim = trimVictim(segment, added);
+                if (victim == null) {
+                    break;
+                }
+                drop(segment, victim, evicted);
+            }
+        }
+
+        int start = mEvictionCursor.getAndIncrement();
+        int idle = 0;
+        for (int i = start; mSize.get() > mMaxSize && idle < mSegments.length; i++) {
+            Segment<K, V> next = mSegments[i & mSegmentMask];
+            synchronized (next) {
+                next.secondChances = 2 * next.count;
+                Node<K, V> victim = trimVictim(next, added);
+                if (victim == null) {
+                    idle++;
+                } else {
+                    idle = 0;
+                    drop(next, victim, evicted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entry {@code segment} should give up to make room, falling back to the window
+     * once its main region is empty, or null if only {@code added} is left. Must be called with
+     * the segment's monitor held.
+     */
+    private Node<K, V> trimVictim(Segment<K, V> segment, Node<K, V> added) {
+        Node<K, V> victim = victim(segment);
+        if (victim == null) {
+            victim = segment.window.head;
+        }
+        return victim == added ? added.next : victim;
+    }
+
+    /**
+     * Moves {@code candidate}, just out of the window, into the main region if it is used more
+     * often than the entries it has to push out. Otherwise drops it.
+     */
+    private void admit(Segment<K, V> segment, Node<K, V> candidate, List<Node<K, V>> evicted) {
+        if (candidate.size > mMaxSize) {
+            drop(segment, candidate, evicted);
+            return;
+        }
+        flushReads(segment, candidate);
+        int frequency = segment.sketch.frequency(candidate.key.hashCode());
+        // The candidate is already counted in the total.
+        while (mSize.get() > mMaxSize) {
+            Node<K, V> victim = victim(segment);
+            if (victim == null) {
+                // Nothing left here to compete with; other segments make room in trim().
+                break;
+            }
+            // Ties go to the victim: a key seen once shouldn't replace one seen once before it.
+            if (frequency <= segment.sketch.frequency(victim.key.hashCode())) {
+                drop(segment, candidate, evicted);
+                return;
+            }
+            drop(segment, victim, evicted);
+        }
+        segment.probation.append(candidate);
+    }
+
+    /**
+     * Returns the entry at the front of probation that hasn't been read since it got there,
+     * promoting those that have. Takes entries from the protected region if probation runs out.
+     * Returns null if the main region is empty.
+     */
+    private Node<K, V> victim(Segment<K, V> segment) {
+        Region<K, V> probation = segment.probation;
+        Region<K, V> protectedRegion = segment.protectedRegion;
+        while (true) {
+            Node<K, V> node = probation.head;
+            if (node == null) {
+                node = protectedRegion.head;
+                if (node == null) {
+                    return null;
+                }
+                protectedRegion.unlink(node);
+                probation.append(node);
+                continue;
+            }
+            if (node.reads == 0 || segment.secondChances-- <= 0) {
+                return node;
+            }
+            flushReads(segment, node);
+            probation.unlink(node);
+            protectedRegion.append(node);
+            while (protectedRegion.size > segment.protectedMaxSize) {
+                Node<K, V> demoted = protectedRegion.head;
+                if (demoted.reads > 0 && demoted != protectedRegion.tail && segment.secondChances-- > 0) {
+                    flushReads(segment, demoted);
+                    protectedRegion.unlink(demoted);
+                    protectedRegion.append(demoted);
+                    continue;
+                }
+                protectedRegion.unlink(demoted);
+                probation.append(demoted);
+            }
+        }
+    }
+
+    /** Adds the reads counted on {@code node} to the sketch. */
+    private static <K, V> void flushReads(Segment<K, V> segment, Node<K, V> node) {
+        int reads = node.reads;
+        node.reads = 0;
+        int hash = node.key.hashCode();
+        for (int i = 0; i < reads; i++) {
+            segment.sketch.increment(hash);
+        }
+    }
+
+    /** Evicts {@code node}, which may be in a region or a candidate between regions. */
+    private void drop(Segment<K, V> segment, Node<K, V> node, List<Node<K, V>> evicted) {
+        if (node.region != null) {
+            node.region.unlink(node);
+        }
+        segment.grow(-node.size);
+        mMap.remove(node.key);
+        segment.count--;
+        segment.evictionCount++;
+        keyRemoved(node.key);
+        evicted.add(node);
+    }
+
+    private void notifyEvicted(List<Node<K, V>> evicted) {
+        for (Node<K, V> node : evicted) {
+            entryRemoved(true, node.key, node.value, null);
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return mSegments[hash & mSegmentMask];
+    }
+
+    /**
+     * Called for entries that have been evicted or removed, as in
+     * {@link ConcurrentLruCache#entryRemoved}. The default implementation does nothing.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called when a new key enters the cache, as in {@link ConcurrentLruCache#keyAdded}. The
+     * default implementation does nothing.
+     */
+    protected void keyAdded(K key) {}
+
+    /**
+     * Called when a key leaves the cache, as in {@link ConcurrentLruCache#keyRemoved}. The
+     * default implementation does nothing.
+     */
+    protected void keyRemoved(K key) {}
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value}. The default implementation
+     * asks the cache's {@link Weigher}, or returns 1 if there is none.
+     */
+    protected int sizeOf(K key, V value) {
+        return (mWeigher != null) ? mWeigher.weigh(key, value) : 1;
+    }
+
+    @Override
+    public final int size() {
+        return (int) mSize.get();
+    }
+
+    @Override
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.putCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of values that have been evicted, including candidates that were not
+     * admitted.
+     */
+    public final int evictionCount() {
+        int count = 0;
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache. Within each segment, entries on
+     * probation come first, then the window, then the protected region.
+     */
+    @Override
+    public final Map<K, V> snapshot() {
+        Map<K, V> snapshot = new LinkedHashMap<K, V>();
+        for (Segment<K, V> segment : mSegments) {
+            synchronized (segment) {
+                for (Region<K, V> region : segment.regions()) {
+                    for (Node<K, V> node = region.head; node != null; node = node.next) {
+                        snapshot.put(node.key, node.value);
+                    }
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Override public final String toString() {
+        return String.format("TinyLfuCache[maxSize=%d,segments=%d]", mMaxSize, mSegments.length);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+
+        /**
+         * Reads since the sketch last counted them. Not volatile: a read only needs to be seen by
+         * the next eviction eventually, and a fence on every hit would cost more than the count.
+         */
+        int reads;
+
+        // Guarded by the owning segment's monitor.
+        int size;
+        /** The region holding this node, or null while it is a candidate for the main region. */
+        Region<K, V> region;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int size) {
+            this.key   = key;
+            this.value = value;
+            this.size  = size;
+        }
+    }
+
+    /**
+     * A list of entries, oldest first, and the sum of their sizes.
+     */
+    private static final class Region<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        void append(Node<K, V> node) {
+            node.region = this;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size += node.size;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.region = null;
+            node.prev = null;
+            node.next = null;
+            size -= node.size;
+        }
+    }
+
+    /**
+     * A stripe of the cache with its own regions and sketch. All fields are guarded by the
+     * segment's monitor.
+     */
+    private static final class Segment<K, V> {
+        /** Even share of the maximum size; the segment may hold more while others have room. */
+        final int share;
+
+        /** The cache's total size, kept in step with {@link #size}. */
+        final AtomicLong total;
+
+        final int windowMaxSize;
+        final int protectedMaxSize;
+        final Region<K, V> window = new Region<K, V>();
+        final Region<K, V> probation = new Region<K, V>();
+        final Region<K, V> protectedRegion = new Region<K, V>();
+        final FrequencySketch sketch;
+        /** Sum of the sizes of the entries, including a candidate between regions. */
+        int size;
+        int count;
+        int putCount;
+        int evictionCount;
+
+        /** Entries that may still be passed over for having been read, during one eviction. */
+        int secondChances;
+
+        Segment(int share, int maxSketchCapacity, AtomicLong total) {
+            this.share       = share;
+            this.total       = total;
+            // Sized for the most entries the share can hold up front; growing would forget counts.
+            sketch           = new FrequencySketch(Math.min(share, maxSketchCapacity));
+            windowMaxSize    = (int) Math.max(1, (long) share * WINDOW_PERCENT / 100);
+            protectedMaxSize = (int) ((long) Math.max(0, share - windowMaxSize) * PROTECTED_PERCENT / 100);
+        }
+
+        void grow(int delta) {
+            size += delta;
+            total.addAndGet(delta);
+        }
+
+        @SuppressWarnings("unchecked")
+        Region<K, V>[] regions() {
+            return new Region[] { probation, window, protectedRegion };
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import java.io.File;
+import java.io.IOException;
+
+public class Utils {
+    private static final int MIN_FETCH_THREADS = 2;
+    private static final int MAX_FETCH_THREADS = 4;
+    private static final int MAX_DISK_THREADS = 4;
+
+    static int calculateFetchThreadCount() {
+      int cores = Runtime.getRuntime().availableProcessors();
+      // One fetch worker per core, bounded inside min/max.
+      return Math.max(Math.min(cores, MAX_FETCH_THREADS), MIN_FETCH_THREADS);
+    }
+
+    static int calculateDiskThreadCount() {
+      int cores = Runtime.getRuntime().availableProcessors();
+      // Disk hits are mostly decoding, so one reader per core, up to the max.
+      return Math.max(Math.min(cores, MAX_DISK_THREADS), 1);
+    }
+
+    public static DiskLruCache openDiskLruCache(File cacheDir, int appVersion, int valueCount, long maxSize) {
+        try {
+            if (!cacheDir.exists()) {
+                cacheDir.mkdirs();
+            }
+            return DiskLruCache.open(cacheDir, appVersion, valueCount, maxSize);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to open DiskLruCache", ex);
+        }
+    }
+
+    /**
+     * Deletes {@code file} and, if it is a directory, everything inside it.
+     */
+    static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+}
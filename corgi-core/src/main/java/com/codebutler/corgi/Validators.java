@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+/**
+ * What a server needs to tell whether a cached response is still current: an ETag, a
+ * Last-Modified date, or an opaque version token. Any of them may be missing.
+ *
+ * <p>Attach them to a fetched response with {@link Response#setValidators}. Once that response
+ * expires, it is passed to {@link Request#fetch(RequestCallback, Response)}, which can send them
+ * along and call {@link RequestCallback#onNotModified} if nothing changed.
+ */
+public final class Validators {
+    private final String mETag;
+    private final long   mLastModified;
+    private final String mVersion;
+
+    /**
+     * @param eTag Entity tag, or null
+     * @param lastModified Last modification time in milliseconds since the epoch, or 0
+     * @param version Opaque version token, or null
+     */
+    public Validators(String eTag, long lastModified, String version) {
+        mETag         = eTag;
+        mLastModified = lastModified;
+        mVersion      = version;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public String getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "Validators{eTag=" + mETag + ", lastModified=" + mLastModified + ", version=" + mVersion + "}";
+    }
+}
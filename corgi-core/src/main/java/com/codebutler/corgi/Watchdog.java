@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link Task}s once they are due: fetch deadlines and delayed retries.
+ */
+class Watchdog extends Dispatcher {
+    private static final String TAG = "CorgiWatchdog";
+
+    /**
+     * Work to run after a delay. Tasks that are no longer needed should be taken out of the queue
+     * so they don't hold on to their requests.
+     */
+    abstract static class Task implements Delayed, Runnable {
+        /** When this task is due, in {@link System#nanoTime()} terms. */
+        private final long mDeadline;
+
+        Task(long delayMillis) {
+            mDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(mDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed another) {
+            long diff = getDelay(TimeUnit.NANOSECONDS) - another.getDelay(TimeUnit.NANOSECONDS);
+            return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+        }
+    }
+
+    /** Tasks waiting to become due. */
+    private final BlockingQueue<Task> mQueue;
+
+    /**
+     * @param queue Delay queue of tasks to run
+     */
+    Watchdog(BlockingQueue<Task> queue) {
+        mQueue = queue;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Task task = mQueue.take();
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, "Task failed: " + task, ex);
+                }
+            } catch (InterruptedException ignored) {
+                // We may have been interrupted because it was time to quit.
+                if (isQuitting()) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+/**
+ * Computes the size of memory cache entries.
+ */
+public interface Weigher<K, V> {
+    /**
+     * Returns the size of the entry for {@code key} and {@code value}, in the same units as the
+     * cache's maximum size. Must not be negative, and must not change while the entry is cached.
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+
+/**
+ * Sets up {@link Corgi} for an Android app: caches under {@link Context#getCacheDir()}, sized from
+ * the device's memory class and storage, with background priority threads and logging to logcat.
+ */
+public class AndroidCorgi {
+    private AndroidCorgi() {}
+
+    public static Corgi create(Context context, Corgi.Listener listener) {
+        return builder(context, listener).build();
+    }
+
+    /**
+     * Returns a builder configured for {@code context}, for further tuning. Also installs an
+     * {@link AndroidLogger} if no other logger has been installed.
+     */
+    public static Corgi.Builder builder(Context context, Corgi.Listener listener) {
+        if (Log.getLogger() instanceof JavaLogger) {
+            Log.setLogger(new AndroidLogger());
+        }
+        return new Corgi.Builder(context.getCacheDir(), listener)
+            .appVersion(getAppVersion(context))
+            .sizeProvider(new AndroidSizeProvider(context))
+            .threadFactory(new AndroidThreadFactory());
+    }
+
+    private static int getAppVersion(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return packageInfo.versionCode;
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to get app version", ex);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 Eric Butler
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codebutler.corgi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Logs to logcat. Whether a tag is loggable is looked up once per tag, so enabling it with
+ * {@code adb shell setprop log.tag.<TAG>} takes effect on the next process start.
+ */
+public class AndroidLogger implements Logger {
+    /** Lowest loggable level of each tag seen so far. */
+    private final ConcurrentMap<String, Integer> mMinLevels = new ConcurrentHashMap<String, Integer>();
+
+    @Override
+    public boolean isLoggable(String tag, int level) {
+        Integer minLevel = mMinLevels.get(tag);
+        if (minLevel == null) {
+            minLevel = Log.ERROR;
+            for (int candidate = Log.VERBOSE; candidate < Log.ERROR; candidate++) {
+                if (android.util.Log.isLoggable(tag, candidate)) {
+                    minLevel = candidate;
+                    break;
+                }
+            }
+            mMinLevels.put(tag, minLevel);
+        }
+        return level >= minLevel;
+    }
+
+    @Override
+    public void log(int level, String tag, String message, Throwable error) {
+        if (error != null) {
+            message = message + '\n' + android.util.Log.getStackTraceString(error);
+        }
+        android.util.Log.println(level, tag, message);
+    }
+}
@@ -18,34 +18,33 @@ package com.codebutler.corgi;
 
 import android.app.ActivityManager;
 import android.content.Context;
-import android.content.pm.PackageInfo;
 import android.os.Build;
 import android.os.StatFs;
-import com.jakewharton.disklrucache.DiskLruCache;
 
 import java.io.File;
-import java.io.IOException;
 
 import static android.content.Context.ACTIVITY_SERVICE;
 import static android.content.pm.ApplicationInfo.FLAG_LARGE_HEAP;
 
-public class Utils {
+/**
+ * Sizes the memory cache from the device's memory class and the disk cache from the size of the
+ * volume it's on.
+ */
+public class AndroidSizeProvider implements SizeProvider {
     private static final int MIN_DISK_CACHE_SIZE = 5 * 1024 * 1024; // 5MB
     private static final int MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
     private static final int MAX_MEM_CACHE_SIZE = 20 * 1024 * 1024; // 20MB
 
-    static int calculateDiskCacheSize(File dir) {
-      StatFs statFs = new StatFs(dir.getAbsolutePath());
-      int available = statFs.getBlockCount() * statFs.getBlockSize();
-      // Target 2% of the total space.
-      int size = available / 50;
-      // Bound inside min/max size for disk cache.
-      return Math.max(Math.min(size, MAX_DISK_CACHE_SIZE), MIN_DISK_CACHE_SIZE);
+    private final Context mContext;
+
+    public AndroidSizeProvider(Context context) {
+        mContext = context.getApplicationContext();
     }
 
-    static int calculateMemoryCacheSize(Context context) {
-      ActivityManager am = (ActivityManager) context.getSystemService(ACTIVITY_SERVICE);
-      boolean largeHeap = (context.getApplicationInfo().flags & FLAG_LARGE_HEAP) != 0;
+    @Override
+    public int getMemoryCacheSize() {
+      ActivityManager am = (ActivityManager) mContext.getSystemService(ACTIVITY_SERVICE);
+      boolean largeHeap = (mContext.getApplicationInfo().flags & FLAG_LARGE_HEAP) != 0;
       int memoryClass = am.getMemoryClass();
       if (largeHeap && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
         memoryClass = ActivityManagerHoneycomb.getLargeMemoryClass(am);
@@ -56,25 +55,17 @@ public class Utils {
       return Math.min(size, MAX_MEM_CACHE_SIZE);
     }
 
-    public static DiskLruCache openDiskLruCache(Context context) {
-        try {
-            File cacheDir = new File(context.getCacheDir(), "corgi");
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
-            }
-            return DiskLruCache.open(cacheDir, getAppVersion(context), 1, calculateDiskCacheSize(cacheDir));
-        } catch (IOException ex) {
-            throw new RuntimeException("Failed to open DiskLruCache", ex);
-        }
-    }
-
-    private static int getAppVersion(Context context) {
-        try {
-            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
-            return packageInfo.versionCode;
-        } catch (Exception ex) {
-            throw new RuntimeException("Failed to get app version", ex);
-        }
+    @Override
+    public long getDiskCacheSize(File directory) {
+      if (!directory.exists()) {
+        directory.mkdirs();
+      }
+      StatFs statFs = new StatFs(directory.getAbsolutePath());
+      long available = (long) statFs.getBlockCount() * statFs.getBlockSize();
+      // Target 2% of the total space.
+      long size = available / 50;
+      // Bound inside min/max size for disk cache.
+      return Math.max(Math.min(size, MAX_DISK_CACHE_SIZE), MIN_DISK_CACHE_SIZE);
     }
 
     private static class ActivityManagerHoneycomb {